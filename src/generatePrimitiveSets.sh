@@ -0,0 +1,12 @@
+#!/bin/sh
+# Generates IntArrayNavigableSet and LongArrayNavigableSet from PrimitiveArrayNavigableSet.template.
+# Run from the src directory after changing the template and commit the generated classes with it.
+dir=ru/ifmo/rain/vlasova/arrayset
+
+generate() {
+    sed -e "s/\\\$NConsumer/$3Consumer/g" -e "s/\\\$BYTES/$2.BYTES/g" -e "s/\\\$B/$2/g" -e "s/\\\$N/$3/g" \
+        -e "s/\\\$T/$1/g" "$dir/PrimitiveArrayNavigableSet.template" > "$dir/$3ArrayNavigableSet.java"
+}
+
+generate int Integer Int
+generate long Long Long
@@ -0,0 +1,392 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Base of navigable sets stored in ascending order at positions of some backing storage. A set is
+ * a range {@code [from, to)} of positions read in either direction, so views of views share the
+ * storage, stay flat and take one search per bound. The sets are immutable unless a subclass says
+ * otherwise.
+ */
+public abstract class AbstractArrayNavigableSet<T> extends AbstractSet<T> implements NavigableSet<T>, RankedSet<T> {
+    /**
+     * Characteristics of spliterators of array sets.
+     */
+    static final int CHARACTERISTICS = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED
+            | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE;
+
+    final int from, to;
+    final boolean descending;
+
+    AbstractArrayNavigableSet(int from, int to, boolean descending) {
+        this.from = from;
+        this.to = to;
+        this.descending = descending;
+    }
+
+    /**
+     * Returns the first position of this set. The range is read through {@code from()} and
+     * {@code to()}, so that a set over changing storage can compute it on each call.
+     */
+    int from() {
+        return from;
+    }
+
+    /**
+     * Returns the position after the last one of this set.
+     */
+    int to() {
+        return to;
+    }
+
+    /**
+     * Returns the element at a position of the backing storage.
+     */
+    abstract T elementAt(int position);
+
+    /**
+     * Returns the position of the first element in this range not less than the key in ascending
+     * order, or {@code to} if there is none.
+     */
+    abstract int ceilingPosition(T key);
+
+    /**
+     * Returns the position of the first element in this range greater than the key in ascending
+     * order, or {@code to} if there is none.
+     */
+    abstract int higherPosition(T key);
+
+    /**
+     * Returns a set over the positions {@code [from, to)} of the same storage.
+     */
+    abstract AbstractArrayNavigableSet<T> view(int from, int to, boolean descending);
+
+    /**
+     * Returns the comparator of the ascending order, {@code null} for the natural one.
+     */
+    abstract Comparator<? super T> ascendingComparator();
+
+    @SuppressWarnings("unchecked")
+    final int compare(T a, T b) {
+        Comparator<? super T> comparator = ascendingComparator();
+        return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+    }
+
+    /**
+     * Compares elements in the iteration order of this set.
+     */
+    final int compareInOrder(T a, T b) {
+        return descending ? compare(b, a) : compare(a, b);
+    }
+
+    /**
+     * Converts a position to an index in the iteration order, {@code -1} if it is out of range.
+     */
+    final int index(int position) {
+        int from = from(), to = to();
+        if (position < from || position >= to) {
+            return -1;
+        }
+        return descending ? to - 1 - position : position - from;
+    }
+
+    final int position(int index) {
+        int from = from(), to = to();
+        Objects.checkIndex(index, to - from);
+        return descending ? to - 1 - index : from + index;
+    }
+
+    T element(int index) {
+        return elementAt(position(index));
+    }
+
+    private T elementOrNull(int position) {
+        return position < from() || position >= to() ? null : elementAt(position);
+    }
+
+    AbstractArrayNavigableSet<T> range(int low, int high) {
+        return view(low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public T lower(T t) {
+        return elementOrNull(descending ? higherPosition(t) : ceilingPosition(t) - 1);
+    }
+
+    @Override
+    public T floor(T t) {
+        return elementOrNull(descending ? ceilingPosition(t) : higherPosition(t) - 1);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return elementOrNull(descending ? higherPosition(t) - 1 : ceilingPosition(t));
+    }
+
+    @Override
+    public T higher(T t) {
+        return elementOrNull(descending ? ceilingPosition(t) - 1 : higherPosition(t));
+    }
+
+    @Override
+    public int rank(T element) {
+        return descending ? to() - higherPosition(element) : ceilingPosition(element) - from();
+    }
+
+    @Override
+    public T select(int index) {
+        return element(index);
+    }
+
+    @Override
+    public T pollFirst() {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public T pollLast() {
+        throw new UnsupportedOperationException("Set is immutable");
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return element(index++);
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator that splits the range of this set in halves.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new RangeSpliterator(0, size());
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> descendingSet() {
+        return view(from(), to(), !descending);
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        int order = compare(fromElement, toElement);
+        if (descending ? order < 0 : order > 0) {
+            throw new IllegalArgumentException();
+        }
+        T low = descending ? toElement : fromElement;
+        T high = descending ? fromElement : toElement;
+        boolean lowInclusive = descending ? toInclusive : fromInclusive;
+        boolean highInclusive = descending ? fromInclusive : toInclusive;
+        return range(lowInclusive ? ceilingPosition(low) : higherPosition(low),
+                highInclusive ? higherPosition(high) : ceilingPosition(high));
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return descending
+                ? range(inclusive ? ceilingPosition(toElement) : higherPosition(toElement), to())
+                : range(from(), inclusive ? higherPosition(toElement) : ceilingPosition(toElement));
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return descending
+                ? range(from(), inclusive ? higherPosition(fromElement) : ceilingPosition(fromElement))
+                : range(inclusive ? ceilingPosition(fromElement) : higherPosition(fromElement), to());
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public AbstractArrayNavigableSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    @Override
+    public int size() {
+        return to() - from();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object element) {
+        int position = ceilingPosition((T) element);
+        return position < to() && compare(elementAt(position), (T) element) == 0;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return descending ? Collections.reverseOrder(ascendingComparator()) : ascendingComparator();
+    }
+
+    @Override
+    public T first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return element(0);
+    }
+
+    @Override
+    public T last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return element(size() - 1);
+    }
+
+    /**
+     * Returns which of the keys are in this set. The keys are expected in the iteration order of
+     * the set, so that every search continues from the result of the previous one and all keys take
+     * a single pass over the set. A key out of order restarts the search from the beginning.
+     */
+    public BitSet containsAll(T[] keys) {
+        BitSet result = new BitSet(keys.length);
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            if (index < size() && compareInOrder(element(index), keys[i]) == 0) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the {@link #ceiling ceilings} of the keys to the result, which may be the same array.
+     * The keys are expected in iteration order, as for {@link #containsAll(Object[])}.
+     */
+    public void ceilingAll(T[] keys, T[] result) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            result[i] = index < size() ? element(index) : null;
+        }
+    }
+
+    /**
+     * Stores the {@link #floor floors} of the keys to the result, which may be the same array.
+     * The keys are expected in iteration order, as for {@link #containsAll(Object[])}.
+     */
+    public void floorAll(T[] keys, T[] result) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], true);
+            result[i] = index > 0 ? element(index - 1) : null;
+        }
+    }
+
+    private int restart(T[] keys, int i, int index) {
+        return i > 0 && compareInOrder(keys[i], keys[i - 1]) < 0 ? 0 : index;
+    }
+
+    /**
+     * Returns the first index from {@code start} whose element is not less than the key in
+     * iteration order, or greater than the key if {@code strict}. Probes at growing distances
+     * from the start and then binary-searches the last step.
+     */
+    private int gallop(int start, T key, boolean strict) {
+        int size = size();
+        int low = start - 1, high = start;
+        for (int step = 1; high < size && precedes(element(high), key, strict); step <<= 1) {
+            low = high;
+            high = (int) Math.min(size, start + (long) step);
+        }
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (precedes(element(middle), key, strict)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private boolean precedes(T element, T key, boolean strict) {
+        int order = compareInOrder(element, key);
+        return strict ? order <= 0 : order < 0;
+    }
+
+    private class RangeSpliterator implements Spliterator<T> {
+        private int index;
+        private final int end;
+
+        RangeSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        private T elementAtIndex(int index) {
+            return elementAt(descending ? to() - 1 - index : from() + index);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(elementAtIndex(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            for (int i = index; i < end; i++) {
+                action.accept(elementAtIndex(i));
+            }
+            index = end;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<T> prefix = new RangeSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator();
+        }
+    }
+}
@@ -2,16 +2,19 @@ package ru.ifmo.rain.vlasova.arrayset;
 
 import java.util.*;
 
-public class ArrayNavigableSet<T> extends AbstractSet<T> implements NavigableSet<T> {
-    private Comparator<? super T> comparator;
-    private final List<T> data;
+public class ArrayNavigableSet<T> extends AbstractArrayNavigableSet<T> {
+    private static final int GALLOP_RATIO = 8;
+
+    private final Comparator<? super T> comparator;
+    private final Object[] data;
+    private final EytzingerLayout<T> layout;
 
     public ArrayNavigableSet() {
-        this(Collections.emptyList(), null);
+        this(new Object[0], null);
     }
 
     public ArrayNavigableSet(Comparator<? super T> cmp) {
-        this(Collections.emptyList(), cmp);
+        this(new Object[0], cmp);
     }
 
     public ArrayNavigableSet(Collection<? extends T> other) {
@@ -19,165 +22,221 @@ public class ArrayNavigableSet<T> extends AbstractSet<T> implements NavigableSet
     }
 
     public ArrayNavigableSet(Collection<? extends T> other, Comparator<? super T> cmp) {
-        comparator = cmp;
-        TreeSet<T> tmp = new TreeSet<>(cmp);
-        tmp.addAll(other);
-        data = new ArrayList<>(tmp);
+        this(SortedArrays.sortedDistinct(other, cmp), cmp);
     }
 
-    private ArrayNavigableSet(List<T> other, Comparator<? super T> cmp) {
-        comparator = cmp;
-        data = other;
+    private ArrayNavigableSet(Object[] data, Comparator<? super T> cmp) {
+        this(data, null, cmp, 0, data.length, false);
     }
 
-    private T findElement(T t, int negativeFix, int positiveFix) {
-        int index = Collections.binarySearch(data, t, comparator);
-        index = index >= 0 ? (index + positiveFix) : (-index - 1 - negativeFix);
-        return (index >= 0 && index < size() ? data.get(index) : null);
+    private ArrayNavigableSet(Object[] data, EytzingerLayout<T> layout, Comparator<? super T> cmp,
+                              int from, int to, boolean descending) {
+        super(from, to, descending);
+        comparator = cmp;
+        this.data = data;
+        this.layout = layout;
     }
 
-    @Override
-    public T lower(T t) {
-        return findElement(t, 1, -1);
+    /**
+     * Creates a set that keeps its elements in {@link EytzingerLayout Eytzinger order}, which makes
+     * lookups in large sets cheaper on cache misses.
+     */
+    public static <T> ArrayNavigableSet<T> withEytzingerLayout(Collection<? extends T> other, Comparator<? super T> cmp) {
+        EytzingerLayout<T> layout = new EytzingerLayout<>(SortedArrays.sortedDistinctList(other, cmp), cmp);
+        return new ArrayNavigableSet<>(null, layout, cmp, 0, layout.size(), false);
     }
 
-    @Override
-    public T floor(T t) {
-        return findElement(t, 1, 0);
+    /**
+     * Creates a set over an array that is already sorted by the comparator and has no equal
+     * elements. The array is not copied.
+     */
+    static <T> ArrayNavigableSet<T> ofSortedDistinct(Object[] sorted, Comparator<? super T> cmp) {
+        return new ArrayNavigableSet<>(sorted, cmp);
     }
 
     @Override
-    public T ceiling(T t) {
-        return findElement(t, 0, 0);
+    @SuppressWarnings("unchecked")
+    T elementAt(int position) {
+        return layout == null ? (T) data[position] : layout.get(position);
     }
 
-    @Override
-    public T higher(T t) {
-        return findElement(t, 0, 1);
+    /**
+     * Returns the result of {@link Arrays#binarySearch} over the positions of this set.
+     */
+    @SuppressWarnings("unchecked")
+    private int search(T element) {
+        if (layout == null) {
+            return Arrays.binarySearch((T[]) data, from, to, element, comparator);
+        }
+        int index = layout.search(element);
+        int position = index >= 0 ? index : -index - 1;
+        if (position < from) {
+            return -from - 1;
+        } else if (position >= to) {
+            return -to - 1;
+        }
+        return index;
     }
 
     @Override
-    public T pollFirst() {
-        throw new UnsupportedOperationException("Set is mutable!");
+    int ceilingPosition(T key) {
+        int index = search(key);
+        return index >= 0 ? index : -index - 1;
     }
 
     @Override
-    public T pollLast() {
-        throw new UnsupportedOperationException("Set is mutable!");
+    int higherPosition(T key) {
+        int index = search(key);
+        return index >= 0 ? index + 1 : -index - 1;
     }
 
     @Override
-    public Iterator<T> iterator() {
-        return Collections.unmodifiableList(data).iterator();
+    ArrayNavigableSet<T> view(int from, int to, boolean descending) {
+        return new ArrayNavigableSet<>(data, layout, comparator, from, to, descending);
     }
 
     @Override
-    public NavigableSet<T> descendingSet() {
-        return new ArrayNavigableSet<>(new ReversedList<>(data), Collections.reverseOrder(comparator));
+    Comparator<? super T> ascendingComparator() {
+        return comparator;
     }
 
     @Override
-    public Iterator<T> descendingIterator() {
-        return descendingSet().iterator();
-    }
-
-    private int indexBinarySearchGetter(T element) {
-        int index = Collections.binarySearch(data, element, comparator);
-        index = index >= 0 ? index : (-index - 1);
-        return index;
+    public ArrayNavigableSet<T> descendingSet() {
+        return (ArrayNavigableSet<T>) super.descendingSet();
     }
 
     @Override
-    public NavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
-        int fromIndex = indexBinarySearchGetter(fromElement) + (!fromInclusive && contains(fromElement) ? 1 : 0);
-        int toIndex = indexBinarySearchGetter(toElement) + (toInclusive && contains(toElement) ? 1 : 0);
-        return fromIndex < toIndex && toIndex <= size() ? new ArrayNavigableSet<>(data.subList(fromIndex, toIndex), comparator) :
-                new ArrayNavigableSet<>(comparator);
+    public ArrayNavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return (ArrayNavigableSet<T>) super.subSet(fromElement, fromInclusive, toElement, toInclusive);
     }
 
     @Override
-    public NavigableSet<T> headSet(T toElement, boolean inclusive) {
-        return subSet(isEmpty() ? null : first(), true, toElement, inclusive);
+    public ArrayNavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return (ArrayNavigableSet<T>) super.headSet(toElement, inclusive);
     }
 
     @Override
-    public NavigableSet<T> tailSet(T fromElement, boolean inclusive) {
-        return subSet(fromElement, inclusive, isEmpty() ? null : last(), true);
+    public ArrayNavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return (ArrayNavigableSet<T>) super.tailSet(fromElement, inclusive);
     }
 
     @Override
-    public SortedSet<T> headSet(T toElement) {
-        return subSet(isEmpty() ? null : first(), true, toElement, false);
+    public ArrayNavigableSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
     }
 
     @Override
-    public SortedSet<T> tailSet(T fromElement) {
-        return subSet(fromElement, true, isEmpty() ? null : last(), true);
+    public ArrayNavigableSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
-    public SortedSet<T> subSet(T fromElement, T toElement) {
-        if ((comparator != null ? comparator.compare(fromElement, toElement) :
-                ((Comparable<T>) fromElement).compareTo(toElement)) > 0) {
-            throw new IllegalArgumentException();
-        }
-        return subSet(fromElement, true, toElement, false);
+    public ArrayNavigableSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
     }
 
-    @Override
-    public int size() {
-        return data.size();
+    /**
+     * Returns the elements of both sets. Of equal elements, the one from this set is kept.
+     */
+    public ArrayNavigableSet<T> union(AbstractArrayNavigableSet<T> other) {
+        return merge(other, true, true, true);
     }
 
-    @SuppressWarnings("unchecked")
-    public boolean contains(Object element) {
-//        return data.contains(element);
-        return Collections.binarySearch(data, (T) element, comparator) >= 0;
+    /**
+     * Returns the elements of this set that are also in the other one.
+     */
+    public ArrayNavigableSet<T> intersection(AbstractArrayNavigableSet<T> other) {
+        return merge(other, false, true, false);
     }
 
-    @Override
-    public Comparator<? super T> comparator() {
-        return comparator;
+    /**
+     * Returns the elements of this set that are not in the other one.
+     */
+    public ArrayNavigableSet<T> difference(AbstractArrayNavigableSet<T> other) {
+        return merge(other, true, false, false);
     }
 
-    @Override
-    public T first() {
-        if (!data.isEmpty()) {
-            return data.iterator().next();
-        }
-        throw new NoSuchElementException();
+    /**
+     * Returns the elements that are in exactly one of the sets.
+     */
+    public ArrayNavigableSet<T> symmetricDifference(AbstractArrayNavigableSet<T> other) {
+        return merge(other, true, false, true);
     }
 
-    @Override
-    public T last() {
-        if (!data.isEmpty()) {
-            return data.get(data.size() - 1);
+    /**
+     * Merges the sets in iteration order, emitting runs of elements found only in this set, in
+     * both sets or only in the other one. Runs are skipped linearly when the sizes are close and
+     * by galloping over the larger set when they differ by {@link #GALLOP_RATIO} times or more,
+     * so merging a small set into a large one takes O(m log(n / m)) comparisons.
+     */
+    private ArrayNavigableSet<T> merge(AbstractArrayNavigableSet<T> other, boolean keepLeft, boolean keepBoth, boolean keepRight) {
+        if (!Objects.equals(comparator(), other.comparator())) {
+            throw new IllegalArgumentException("Sets have different comparators");
         }
-        throw new NoSuchElementException();
-    }
-
-    public static class ReversedList<T> extends AbstractList<T> {
-        private List<T> data;
-        private boolean isReversed = true;
-
-        ReversedList(ReversedList<T> list) {
-            this.data = list.data;
-            this.isReversed = !list.isReversed;
+        int leftSize = size(), rightSize = other.size();
+        boolean gallopLeft = leftSize >= GALLOP_RATIO * (long) rightSize;
+        boolean gallopRight = rightSize >= GALLOP_RATIO * (long) leftSize;
+        Object[] result = new Object[(keepLeft ? leftSize : 0) + (keepRight ? rightSize : 0)
+                + (keepBoth && !keepLeft ? Math.min(leftSize, rightSize) : 0)];
+        int size = 0, i = 0, j = 0;
+        while (i < leftSize && j < rightSize) {
+            T left = element(i), right = other.element(j);
+            int order = compareInOrder(left, right);
+            if (order < 0) {
+                int end = skip(this, i, leftSize, right, gallopLeft);
+                size = keepLeft ? copy(this, i, end, result, size) : size;
+                i = end;
+            } else if (order > 0) {
+                int end = skip(other, j, rightSize, left, gallopRight);
+                size = keepRight ? copy(other, j, end, result, size) : size;
+                j = end;
+            } else {
+                if (keepBoth) {
+                    result[size++] = left;
+                }
+                i++;
+                j++;
+            }
         }
-
-        ReversedList(List<T> other) {
-            data = other;
+        size = keepLeft ? copy(this, i, leftSize, result, size) : size;
+        size = keepRight ? copy(other, j, rightSize, result, size) : size;
+        return ofSortedDistinct(size == result.length ? result : Arrays.copyOf(result, size), comparator());
+    }
+
+    /**
+     * Returns the first index from {@code start} of an element not less than the key in iteration
+     * order, given that the element at {@code start} is less.
+     */
+    private int skip(AbstractArrayNavigableSet<T> set, int start, int end, T key, boolean gallop) {
+        if (!gallop) {
+            int index = start + 1;
+            while (index < end && compareInOrder(set.element(index), key) < 0) {
+                index++;
+            }
+            return index;
         }
-
-        @Override
-        public T get(int index) {
-            return isReversed ? data.get(size() - index - 1) : data.get(index);
+        int low = start, bound = 1;
+        while (start + bound < end && compareInOrder(set.element(start + bound), key) < 0) {
+            low = start + bound;
+            bound <<= 1;
         }
+        int high = (int) Math.min(end, start + (long) bound);
+        // element(low) < key, element(high) >= key or high == end
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (compareInOrder(set.element(middle), key) < 0) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
 
-        @Override
-        public int size() {
-            return data.size();
+    private static <T> int copy(AbstractArrayNavigableSet<T> set, int start, int end, Object[] result, int size) {
+        for (int index = start; index < end; index++) {
+            result[size++] = set.element(index);
         }
+        return size;
     }
 }
@@ -2,7 +2,7 @@ package ru.ifmo.rain.vlasova.arrayset;
 
 import java.util.*;
 
-public class ArraySortedSet<T> extends AbstractSet<T> implements java.util.SortedSet<T> {
+public class ArraySortedSet<T> extends AbstractSet<T> implements RankedSet<T> {
     private Comparator<? super T> comparator;
     private final List<T> data;
 
@@ -18,14 +18,12 @@ public class ArraySortedSet<T> extends AbstractSet<T> implements java.util.Sorte
 
     public ArraySortedSet(Collection<? extends T> other) {
         comparator = null;
-        data = new ArrayList<>(new TreeSet<>(other));
+        data = SortedArrays.sortedDistinctList(other, null);
     }
 
     public ArraySortedSet(Collection<? extends T> other, Comparator<? super T> cmp) {
         comparator = cmp;
-        TreeSet<T> tmp = new TreeSet<>(cmp);
-        tmp.addAll(other);
-        data = new ArrayList<>(tmp);
+        data = SortedArrays.sortedDistinctList(other, cmp);
     }
 
     private ArraySortedSet(List<T> other, Comparator<? super T> cmp) {
@@ -69,7 +67,18 @@ public class ArraySortedSet<T> extends AbstractSet<T> implements java.util.Sorte
         throw new NoSuchElementException();
     }
 
-    private java.util.SortedSet<T> subSet(T fromElement, T toElement, boolean isLastIncluded) {
+    @Override
+    public int rank(T element) {
+        int index = Collections.binarySearch(data, element, comparator);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    public T select(int index) {
+        return data.get(index);
+    }
+
+    private ArraySortedSet<T> subSet(T fromElement, T toElement, boolean isLastIncluded) {
         int fromIndex = Collections.binarySearch(data, fromElement, comparator);
         int toIndex = Collections.binarySearch(data, toElement, comparator);
         fromIndex = fromIndex >= 0 ? fromIndex : (-fromIndex - 1);
@@ -80,17 +89,17 @@ public class ArraySortedSet<T> extends AbstractSet<T> implements java.util.Sorte
     }
 
     @Override
-    public java.util.SortedSet<T> headSet(T toElement) {
+    public ArraySortedSet<T> headSet(T toElement) {
         return subSet(data.isEmpty() ? null : first(), toElement, false);
     }
 
     @Override
-    public java.util.SortedSet<T> tailSet(T fromElement) {
+    public ArraySortedSet<T> tailSet(T fromElement) {
         return subSet(fromElement, data.isEmpty() ? null : last(), true);
     }
 
     @Override
-    public SortedSet<T> subSet(T fromElement, T toElement) {
+    public ArraySortedSet<T> subSet(T fromElement, T toElement) {
         if ((comparator != null ? comparator.compare(fromElement, toElement) :
                 ((Comparable<T>) fromElement).compareTo(toElement)) > 0) {
             throw new IllegalArgumentException();
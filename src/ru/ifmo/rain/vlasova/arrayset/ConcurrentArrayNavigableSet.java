@@ -0,0 +1,244 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Thread-safe navigable set that publishes immutable {@link ArrayNavigableSet} snapshots through a
+ * volatile reference. Reads take the current snapshot and search it without locking, and every
+ * read sees a whole snapshot. Writers are serialized; each builds the next snapshot by a linear
+ * merge of the current one with the change, so updates should come in batches through
+ * {@link #addAll} and {@link #removeAll} rather than one element at a time.
+ * <p>
+ * Iterators and views are those of the snapshot taken when they are created: they never throw
+ * {@link ConcurrentModificationException}, don't see later changes and are immutable.
+ */
+public class ConcurrentArrayNavigableSet<T> extends AbstractSet<T> implements NavigableSet<T> {
+    private final Comparator<? super T> comparator;
+    private volatile ArrayNavigableSet<T> snapshot;
+
+    public ConcurrentArrayNavigableSet() {
+        this((Comparator<? super T>) null);
+    }
+
+    public ConcurrentArrayNavigableSet(Comparator<? super T> cmp) {
+        this(Collections.emptyList(), cmp);
+    }
+
+    public ConcurrentArrayNavigableSet(Collection<? extends T> other) {
+        this(other, null);
+    }
+
+    public ConcurrentArrayNavigableSet(Collection<? extends T> other, Comparator<? super T> cmp) {
+        comparator = cmp;
+        snapshot = new ArrayNavigableSet<>(other, cmp);
+    }
+
+    /**
+     * Returns the current contents as an immutable set, for a consistent view over several reads.
+     */
+    public ArrayNavigableSet<T> snapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public T lower(T t) {
+        return snapshot.lower(t);
+    }
+
+    @Override
+    public T floor(T t) {
+        return snapshot.floor(t);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return snapshot.ceiling(t);
+    }
+
+    @Override
+    public T higher(T t) {
+        return snapshot.higher(t);
+    }
+
+    @Override
+    public T first() {
+        return snapshot.first();
+    }
+
+    @Override
+    public T last() {
+        return snapshot.last();
+    }
+
+    @Override
+    public int size() {
+        return snapshot.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return snapshot.contains(element);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return snapshot.iterator();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return snapshot.spliterator();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot.toArray();
+    }
+
+    @Override
+    public <E> E[] toArray(E[] a) {
+        return snapshot.toArray(a);
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public ArrayNavigableSet<T> descendingSet() {
+        return snapshot.descendingSet();
+    }
+
+    @Override
+    public Iterator<T> descendingIterator() {
+        return snapshot.descendingIterator();
+    }
+
+    @Override
+    public ArrayNavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        return snapshot.subSet(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public ArrayNavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return snapshot.headSet(toElement, inclusive);
+    }
+
+    @Override
+    public ArrayNavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return snapshot.tailSet(fromElement, inclusive);
+    }
+
+    @Override
+    public ArrayNavigableSet<T> subSet(T fromElement, T toElement) {
+        return snapshot.subSet(fromElement, toElement);
+    }
+
+    @Override
+    public ArrayNavigableSet<T> headSet(T toElement) {
+        return snapshot.headSet(toElement);
+    }
+
+    @Override
+    public ArrayNavigableSet<T> tailSet(T fromElement) {
+        return snapshot.tailSet(fromElement);
+    }
+
+    @Override
+    public synchronized boolean add(T element) {
+        if (snapshot.contains(element)) {
+            return false;
+        }
+        snapshot = snapshot.union(new ArrayNavigableSet<>(List.of(element), comparator));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean remove(Object element) {
+        if (!snapshot.contains(element)) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        ArrayNavigableSet<T> removed = new ArrayNavigableSet<>(List.of((T) element), comparator);
+        snapshot = snapshot.difference(removed);
+        return true;
+    }
+
+    /**
+     * Adds the elements in one merge.
+     */
+    @Override
+    public synchronized boolean addAll(Collection<? extends T> elements) {
+        return publish(snapshot.union(new ArrayNavigableSet<>(elements, comparator)));
+    }
+
+    /**
+     * Removes the elements in one merge.
+     */
+    @Override
+    public synchronized boolean removeAll(Collection<?> elements) {
+        @SuppressWarnings("unchecked")
+        Collection<? extends T> removed = (Collection<? extends T>) elements;
+        return publish(snapshot.difference(new ArrayNavigableSet<>(removed, comparator)));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> elements) {
+        return removeIf(element -> !elements.contains(element));
+    }
+
+    @Override
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        ArrayNavigableSet<T> current = snapshot;
+        Object[] kept = new Object[current.size()];
+        int size = 0;
+        for (T element : current) {
+            if (!filter.test(element)) {
+                kept[size++] = element;
+            }
+        }
+        return publish(ArrayNavigableSet.ofSortedDistinct(Arrays.copyOf(kept, size), comparator));
+    }
+
+    private boolean publish(ArrayNavigableSet<T> next) {
+        if (next.size() == snapshot.size()) {
+            return false;
+        }
+        snapshot = next;
+        return true;
+    }
+
+    @Override
+    public synchronized T pollFirst() {
+        ArrayNavigableSet<T> current = snapshot;
+        if (current.isEmpty()) {
+            return null;
+        }
+        T first = current.first();
+        snapshot = current.tailSet(first, false);
+        return first;
+    }
+
+    @Override
+    public synchronized T pollLast() {
+        ArrayNavigableSet<T> current = snapshot;
+        if (current.isEmpty()) {
+            return null;
+        }
+        T last = current.last();
+        snapshot = current.headSet(last, false);
+        return last;
+    }
+
+    @Override
+    public synchronized void clear() {
+        snapshot = new ArrayNavigableSet<>(comparator);
+    }
+}
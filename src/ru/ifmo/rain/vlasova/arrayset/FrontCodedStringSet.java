@@ -0,0 +1,398 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Immutable navigable set of strings in natural order, stored as front-coded UTF-8. Strings are
+ * grouped in blocks of {@link #BLOCK_SIZE}: the first string of a block is stored whole, every next
+ * one as the length of the prefix it shares with the previous string and the rest of its bytes.
+ * A search binary-searches the first strings of blocks and then scans one block. Strings are
+ * compared to the key in UTF-16 order while the UTF-8 bytes are decoded, so a search creates no
+ * strings; an element becomes a {@code String} only when it is returned.
+ * <p>
+ * Lengths are written as unsigned LEB128. Strings with unpaired surrogates can't be encoded and
+ * are rejected.
+ */
+public class FrontCodedStringSet extends AbstractArrayNavigableSet<String> {
+    private static final int BLOCK_SIZE = 16;
+
+    private final byte[] bytes;
+    private final int[] blocks;
+    private final int size, maxLength;
+    private final ThreadLocal<Decoder> decoders;
+
+    public FrontCodedStringSet() {
+        this(new Encoder(new Object[0]));
+    }
+
+    public FrontCodedStringSet(Collection<? extends String> strings) {
+        this(new Encoder(SortedArrays.sortedDistinct(strings, null)));
+    }
+
+    private FrontCodedStringSet(Encoder encoder) {
+        this(encoder.bytes(), encoder.blocks, encoder.size, encoder.maxLength, null, 0, encoder.size, false);
+    }
+
+    /**
+     * Creates a set over the given storage. Views share the decoders of their set, which are
+     * created when {@code decoders} is {@code null}.
+     */
+    private FrontCodedStringSet(byte[] bytes, int[] blocks, int size, int maxLength, ThreadLocal<Decoder> decoders,
+                                int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.bytes = bytes;
+        this.blocks = blocks;
+        this.size = size;
+        this.maxLength = maxLength;
+        this.decoders = decoders != null ? decoders : ThreadLocal.withInitial(Decoder::new);
+    }
+
+    private static class Encoder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final int[] blocks;
+        private final int size;
+        private int maxLength;
+
+        Encoder(Object[] strings) {
+            size = strings.length;
+            blocks = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+            byte[] previous = new byte[0];
+            for (int i = 0; i < size; i++) {
+                String string = (String) strings[i];
+                checkSurrogates(string);
+                byte[] current = string.getBytes(StandardCharsets.UTF_8);
+                maxLength = Math.max(maxLength, current.length);
+                int prefix = 0;
+                if (i % BLOCK_SIZE == 0) {
+                    blocks[i / BLOCK_SIZE] = out.size();
+                } else {
+                    prefix = Arrays.mismatch(previous, current);
+                    writeLength(prefix);
+                }
+                writeLength(current.length - prefix);
+                out.write(current, prefix, current.length - prefix);
+                previous = current;
+            }
+        }
+
+        private static void checkSurrogates(String string) {
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    throw new IllegalArgumentException("Unpaired surrogate at " + i + " in " + string);
+                }
+            }
+        }
+
+        private void writeLength(int length) {
+            while (length >= 0x80) {
+                out.write(length & 0x7f | 0x80);
+                length >>>= 7;
+            }
+            out.write(length);
+        }
+
+        byte[] bytes() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Reads the entries of a block into a buffer, each following one reusing the prefix of
+     * the previous entry that is already in the buffer.
+     */
+    private class Decoder {
+        private final byte[] buffer = new byte[maxLength];
+        private int offset, length, position = -1;
+
+        /**
+         * Reads the first entry of the block.
+         */
+        void start(int block) {
+            offset = blocks[block];
+            position = block * BLOCK_SIZE;
+            length = readLength();
+            System.arraycopy(bytes, offset, buffer, 0, length);
+            offset += length;
+        }
+
+        /**
+         * Reads the entry at the position.
+         */
+        void seek(int position) {
+            start(position / BLOCK_SIZE);
+            while (this.position < position) {
+                next();
+            }
+        }
+
+        boolean hasNext() {
+            return position + 1 < size && (position + 1) % BLOCK_SIZE != 0;
+        }
+
+        void next() {
+            int prefix = readLength();
+            int suffix = readLength();
+            System.arraycopy(bytes, offset, buffer, prefix, suffix);
+            offset += suffix;
+            length = prefix + suffix;
+            position++;
+        }
+
+        private int readLength() {
+            int result = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[offset++];
+                result |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return result;
+                }
+            }
+        }
+
+        String string() {
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compares UTF-8 bytes with a string in UTF-16 order.
+     */
+    private static int compare(byte[] bytes, int offset, int length, String key) {
+        int end = offset + length, k = 0, keyLength = key.length();
+        while (offset < end) {
+            int b = bytes[offset] & 0xff;
+            int codePoint;
+            if (b < 0x80) {
+                codePoint = b;
+                offset++;
+            } else if (b < 0xe0) {
+                codePoint = (b & 0x1f) << 6 | bytes[offset + 1] & 0x3f;
+                offset += 2;
+            } else if (b < 0xf0) {
+                codePoint = (b & 0x0f) << 12 | (bytes[offset + 1] & 0x3f) << 6 | bytes[offset + 2] & 0x3f;
+                offset += 3;
+            } else {
+                codePoint = (b & 0x07) << 18 | (bytes[offset + 1] & 0x3f) << 12 | (bytes[offset + 2] & 0x3f) << 6
+                        | bytes[offset + 3] & 0x3f;
+                offset += 4;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (k == keyLength) {
+                    return 1;
+                }
+                int order = codePoint - key.charAt(k++);
+                if (order != 0) {
+                    return order;
+                }
+            } else {
+                for (int i = 0; i < 2; i++) {
+                    if (k == keyLength) {
+                        return 1;
+                    }
+                    int order = (i == 0 ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint)) - key.charAt(k++);
+                    if (order != 0) {
+                        return order;
+                    }
+                }
+            }
+        }
+        return k == keyLength ? 0 : -1;
+    }
+
+    private boolean precedes(int order, boolean strict) {
+        return strict ? order <= 0 : order < 0;
+    }
+
+    /**
+     * Returns the position of the first string not less than the key, or greater than it if
+     * {@code strict}, or {@code size} if there is none. The decoder is left at the found string.
+     */
+    private int search(Decoder decoder, String key, boolean strict) {
+        int low = -1, high = blocks.length;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            int offset = blocks[middle];
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                length |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (precedes(compare(bytes, offset, length, key), strict)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        if (low >= 0) {
+            decoder.start(low);
+            while (decoder.hasNext()) {
+                decoder.next();
+                if (!precedes(compare(decoder.buffer, 0, decoder.length, key), strict)) {
+                    return decoder.position;
+                }
+            }
+        }
+        if (low + 1 < blocks.length) {
+            decoder.start(low + 1);
+            return decoder.position;
+        }
+        return size;
+    }
+
+    private int clamp(int position) {
+        return Math.max(from, Math.min(to, position));
+    }
+
+    @Override
+    String elementAt(int position) {
+        Decoder decoder = decoders.get();
+        decoder.seek(position);
+        return decoder.string();
+    }
+
+    @Override
+    int ceilingPosition(String key) {
+        return clamp(search(decoders.get(), key, false));
+    }
+
+    @Override
+    int higherPosition(String key) {
+        return clamp(search(decoders.get(), key, true));
+    }
+
+    @Override
+    FrontCodedStringSet view(int from, int to, boolean descending) {
+        return new FrontCodedStringSet(bytes, blocks, size, maxLength, decoders, from, to, descending);
+    }
+
+    @Override
+    Comparator<? super String> ascendingComparator() {
+        return null;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        if (!(element instanceof String)) {
+            return false;
+        }
+        String key = (String) element;
+        Decoder decoder = decoders.get();
+        int position = search(decoder, key, false);
+        return from <= position && position < to && compare(decoder.buffer, 0, decoder.length, key) == 0;
+    }
+
+    /**
+     * Returns an iterator that decodes the strings of a block one after another.
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<String> spliterator() {
+        return new StringSpliterator(0, size());
+    }
+
+    /**
+     * Spliterator over a range of indices in iteration order. Going up, it steps one decoder
+     * forward; going down, it decodes a block at a time and reads it backwards.
+     */
+    private class StringSpliterator implements Spliterator<String> {
+        private int index;
+        private final int end;
+        private Decoder decoder;
+        private String[] block;
+        private int blockIndex = -1;
+
+        StringSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        private String advance() {
+            int position = descending ? to - 1 - index : from + index;
+            index++;
+            if (decoder == null) {
+                decoder = new Decoder();
+            }
+            if (!descending) {
+                if (decoder.position == position - 1 && position % BLOCK_SIZE != 0) {
+                    decoder.next();
+                } else {
+                    decoder.seek(position);
+                }
+                return decoder.string();
+            }
+            if (position / BLOCK_SIZE != blockIndex) {
+                if (block == null) {
+                    block = new String[BLOCK_SIZE];
+                }
+                blockIndex = position / BLOCK_SIZE;
+                decoder.start(blockIndex);
+                block[0] = decoder.string();
+                while (decoder.position < position) {
+                    decoder.next();
+                    block[decoder.position % BLOCK_SIZE] = decoder.string();
+                }
+            }
+            return block[position % BLOCK_SIZE];
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(advance());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super String> action) {
+            while (index < end) {
+                action.accept(advance());
+            }
+        }
+
+        @Override
+        public Spliterator<String> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<String> prefix = new StringSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+
+        @Override
+        public Comparator<? super String> getComparator() {
+            return comparator();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+// Generated from PrimitiveArrayNavigableSet.template by src/generatePrimitiveSets.sh, edit the template instead.
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable navigable set of {@code int} values kept in a sorted array, so an element takes
+ * {@code Integer.BYTES} bytes instead of a reference to a boxed value. Views returned by the navigation
+ * methods share the array and only store an index range and a direction.
+ * <p>
+ * Methods taking and returning primitives never box. Navigation methods of that kind return the
+ * index of the found element in this set, or {@code -1} if there is none, and the element itself
+ * is read with {@link #getInt(int)}.
+ */
+public class IntArrayNavigableSet extends AbstractArrayNavigableSet<Integer> {
+    private final int[] data;
+
+    public IntArrayNavigableSet() {
+        this(new int[0], 0, 0, false);
+    }
+
+    public IntArrayNavigableSet(int... values) {
+        this(sortedDistinct(values), false);
+    }
+
+    public IntArrayNavigableSet(Collection<? extends Integer> other) {
+        this(other.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private IntArrayNavigableSet(int[] sorted, boolean descending) {
+        this(sorted, 0, sorted.length, descending);
+    }
+
+    private IntArrayNavigableSet(int[] data, int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.data = data;
+    }
+
+    private static int[] sortedDistinct(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[size - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * Returns the position in the array of the first element not less than the key.
+     * The loop has no data-dependent branches, so probes don't stall on mispredictions.
+     */
+    private int ceilingPosition(int key) {
+        int base = from;
+        int length = to - from;
+        if (length == 0) {
+            return from;
+        }
+        while (length > 1) {
+            int half = length >>> 1;
+            base = data[base + half] < key ? base + half : base;
+            length -= half;
+        }
+        return data[base] < key ? base + 1 : base;
+    }
+
+    /**
+     * Returns the position in the array of the first element greater than the key.
+     */
+    private int higherPosition(int key) {
+        int base = from;
+        int length = to - from;
+        if (length == 0) {
+            return from;
+        }
+        while (length > 1) {
+            int half = length >>> 1;
+            base = data[base + half] <= key ? base + half : base;
+            length -= half;
+        }
+        return data[base] <= key ? base + 1 : base;
+    }
+
+    @Override
+    Integer elementAt(int position) {
+        return data[position];
+    }
+
+    @Override
+    int ceilingPosition(Integer key) {
+        return ceilingPosition((int) key);
+    }
+
+    @Override
+    int higherPosition(Integer key) {
+        return higherPosition((int) key);
+    }
+
+    @Override
+    IntArrayNavigableSet view(int from, int to, boolean descending) {
+        return new IntArrayNavigableSet(data, from, to, descending);
+    }
+
+    @Override
+    Comparator<? super Integer> ascendingComparator() {
+        return null;
+    }
+
+    public int getInt(int index) {
+        return data[position(index)];
+    }
+
+    public int lowerIndex(int key) {
+        return index(descending ? higherPosition(key) : ceilingPosition(key) - 1);
+    }
+
+    public int floorIndex(int key) {
+        return index(descending ? ceilingPosition(key) : higherPosition(key) - 1);
+    }
+
+    public int ceilingIndex(int key) {
+        return index(descending ? higherPosition(key) - 1 : ceilingPosition(key));
+    }
+
+    public int higherIndex(int key) {
+        return index(descending ? ceilingPosition(key) - 1 : higherPosition(key));
+    }
+
+    /**
+     * Returns the number of elements preceding the key in iteration order.
+     */
+    public int rank(int key) {
+        return descending ? to - higherPosition(key) : ceilingPosition(key) - from;
+    }
+
+    public int indexOf(int key) {
+        int position = ceilingPosition(key);
+        return position < to && data[position] == key ? index(position) : -1;
+    }
+
+    public boolean containsInt(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int firstInt() {
+        checkNotEmpty();
+        return getInt(0);
+    }
+
+    public int lastInt() {
+        checkNotEmpty();
+        return getInt(size() - 1);
+    }
+
+    private void checkNotEmpty() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public int[] toIntArray() {
+        int[] result = Arrays.copyOfRange(data, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                int tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getInt(index++);
+            }
+        };
+    }
+
+    @Override
+    public Spliterator.OfInt spliterator() {
+        return new RangeSpliterator(0, size());
+    }
+
+    @Override
+    public IntArrayNavigableSet descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    public IntArrayNavigableSet subSet(int fromElement, boolean fromInclusive, int toElement, boolean toInclusive) {
+        if (descending ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        return descending
+                ? range(toInclusive ? ceilingPosition(toElement) : higherPosition(toElement),
+                fromInclusive ? higherPosition(fromElement) : ceilingPosition(fromElement))
+                : range(fromInclusive ? ceilingPosition(fromElement) : higherPosition(fromElement),
+                toInclusive ? higherPosition(toElement) : ceilingPosition(toElement));
+    }
+
+    public IntArrayNavigableSet headSet(int toElement, boolean inclusive) {
+        return descending
+                ? range(inclusive ? ceilingPosition(toElement) : higherPosition(toElement), to)
+                : range(from, inclusive ? higherPosition(toElement) : ceilingPosition(toElement));
+    }
+
+    public IntArrayNavigableSet tailSet(int fromElement, boolean inclusive) {
+        return descending
+                ? range(from, inclusive ? higherPosition(fromElement) : ceilingPosition(fromElement))
+                : range(inclusive ? ceilingPosition(fromElement) : higherPosition(fromElement), to);
+    }
+
+    @Override
+    IntArrayNavigableSet range(int low, int high) {
+        return view(low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public IntArrayNavigableSet subSet(Integer fromElement, boolean fromInclusive, Integer toElement, boolean toInclusive) {
+        return subSet((int) fromElement, fromInclusive, (int) toElement, toInclusive);
+    }
+
+    @Override
+    public IntArrayNavigableSet headSet(Integer toElement, boolean inclusive) {
+        return headSet((int) toElement, inclusive);
+    }
+
+    @Override
+    public IntArrayNavigableSet tailSet(Integer fromElement, boolean inclusive) {
+        return tailSet((int) fromElement, inclusive);
+    }
+
+    @Override
+    public IntArrayNavigableSet subSet(Integer fromElement, Integer toElement) {
+        return subSet((int) fromElement, true, (int) toElement, false);
+    }
+
+    @Override
+    public IntArrayNavigableSet headSet(Integer toElement) {
+        return headSet((int) toElement, false);
+    }
+
+    @Override
+    public IntArrayNavigableSet tailSet(Integer fromElement) {
+        return tailSet((int) fromElement, true);
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return element instanceof Integer && containsInt((Integer) element);
+    }
+
+    /**
+     * Returns which of the keys are in this set, in one pass over keys in iteration order.
+     */
+    public BitSet containsAll(int[] keys) {
+        BitSet result = new BitSet(keys.length);
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            if (index < size() && valueAt(index) == keys[i]) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the indices of the ceilings of the keys, or {@code -1}, in one pass over keys in
+     * iteration order.
+     */
+    public void ceilingAll(int[] keys, int[] indices) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            indices[i] = index < size() ? index : -1;
+        }
+    }
+
+    /**
+     * Stores the indices of the floors of the keys, or {@code -1}, in one pass over keys in
+     * iteration order.
+     */
+    public void floorAll(int[] keys, int[] indices) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], true);
+            indices[i] = index - 1;
+        }
+    }
+
+    private int restart(int[] keys, int i, int index) {
+        return i > 0 && (descending ? keys[i] > keys[i - 1] : keys[i] < keys[i - 1]) ? 0 : index;
+    }
+
+    private int gallop(int start, int key, boolean strict) {
+        int size = size();
+        int low = start - 1, high = start;
+        for (int step = 1; high < size && precedes(valueAt(high), key, strict); step <<= 1) {
+            low = high;
+            high = (int) Math.min(size, start + (long) step);
+        }
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (precedes(valueAt(middle), key, strict)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private boolean precedes(int value, int key, boolean strict) {
+        if (descending) {
+            return strict ? value >= key : value > key;
+        }
+        return strict ? value <= key : value < key;
+    }
+
+    private int valueAt(int index) {
+        return data[descending ? to - 1 - index : from + index];
+    }
+
+    private class RangeSpliterator implements Spliterator.OfInt {
+        private int index;
+        private final int end;
+
+        RangeSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(valueAt(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (int i = index; i < end; i++) {
+                action.accept(valueAt(i));
+            }
+            index = end;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator.OfInt prefix = new RangeSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return comparator();
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+// Generated from PrimitiveArrayNavigableSet.template by src/generatePrimitiveSets.sh, edit the template instead.
+
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable navigable set of {@code long} values kept in a sorted array, so an element takes
+ * {@code Long.BYTES} bytes instead of a reference to a boxed value. Views returned by the navigation
+ * methods share the array and only store an index range and a direction.
+ * <p>
+ * Methods taking and returning primitives never box. Navigation methods of that kind return the
+ * index of the found element in this set, or {@code -1} if there is none, and the element itself
+ * is read with {@link #getLong(int)}.
+ */
+public class LongArrayNavigableSet extends AbstractArrayNavigableSet<Long> {
+    private final long[] data;
+
+    public LongArrayNavigableSet() {
+        this(new long[0], 0, 0, false);
+    }
+
+    public LongArrayNavigableSet(long... values) {
+        this(sortedDistinct(values), false);
+    }
+
+    public LongArrayNavigableSet(Collection<? extends Long> other) {
+        this(other.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private LongArrayNavigableSet(long[] sorted, boolean descending) {
+        this(sorted, 0, sorted.length, descending);
+    }
+
+    private LongArrayNavigableSet(long[] data, int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.data = data;
+    }
+
+    private static long[] sortedDistinct(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[size - 1]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * Returns the position in the array of the first element not less than the key.
+     * The loop has no data-dependent branches, so probes don't stall on mispredictions.
+     */
+    private int ceilingPosition(long key) {
+        int base = from;
+        int length = to - from;
+        if (length == 0) {
+            return from;
+        }
+        while (length > 1) {
+            int half = length >>> 1;
+            base = data[base + half] < key ? base + half : base;
+            length -= half;
+        }
+        return data[base] < key ? base + 1 : base;
+    }
+
+    /**
+     * Returns the position in the array of the first element greater than the key.
+     */
+    private int higherPosition(long key) {
+        int base = from;
+        int length = to - from;
+        if (length == 0) {
+            return from;
+        }
+        while (length > 1) {
+            int half = length >>> 1;
+            base = data[base + half] <= key ? base + half : base;
+            length -= half;
+        }
+        return data[base] <= key ? base + 1 : base;
+    }
+
+    @Override
+    Long elementAt(int position) {
+        return data[position];
+    }
+
+    @Override
+    int ceilingPosition(Long key) {
+        return ceilingPosition((long) key);
+    }
+
+    @Override
+    int higherPosition(Long key) {
+        return higherPosition((long) key);
+    }
+
+    @Override
+    LongArrayNavigableSet view(int from, int to, boolean descending) {
+        return new LongArrayNavigableSet(data, from, to, descending);
+    }
+
+    @Override
+    Comparator<? super Long> ascendingComparator() {
+        return null;
+    }
+
+    public long getLong(int index) {
+        return data[position(index)];
+    }
+
+    public int lowerIndex(long key) {
+        return index(descending ? higherPosition(key) : ceilingPosition(key) - 1);
+    }
+
+    public int floorIndex(long key) {
+        return index(descending ? ceilingPosition(key) : higherPosition(key) - 1);
+    }
+
+    public int ceilingIndex(long key) {
+        return index(descending ? higherPosition(key) - 1 : ceilingPosition(key));
+    }
+
+    public int higherIndex(long key) {
+        return index(descending ? ceilingPosition(key) - 1 : higherPosition(key));
+    }
+
+    /**
+     * Returns the number of elements preceding the key in iteration order.
+     */
+    public int rank(long key) {
+        return descending ? to - higherPosition(key) : ceilingPosition(key) - from;
+    }
+
+    public int indexOf(long key) {
+        int position = ceilingPosition(key);
+        return position < to && data[position] == key ? index(position) : -1;
+    }
+
+    public boolean containsLong(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public long firstLong() {
+        checkNotEmpty();
+        return getLong(0);
+    }
+
+    public long lastLong() {
+        checkNotEmpty();
+        return getLong(size() - 1);
+    }
+
+    private void checkNotEmpty() {
+        if (from == to) {
+            throw new NoSuchElementException();
+        }
+    }
+
+    public long[] toLongArray() {
+        long[] result = Arrays.copyOfRange(data, from, to);
+        if (descending) {
+            for (int i = 0, j = result.length - 1; i < j; i++, j--) {
+                long tmp = result[i];
+                result[i] = result[j];
+                result[j] = tmp;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size();
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getLong(index++);
+            }
+        };
+    }
+
+    @Override
+    public Spliterator.OfLong spliterator() {
+        return new RangeSpliterator(0, size());
+    }
+
+    @Override
+    public LongArrayNavigableSet descendingSet() {
+        return view(from, to, !descending);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong descendingIterator() {
+        return descendingSet().iterator();
+    }
+
+    public LongArrayNavigableSet subSet(long fromElement, boolean fromInclusive, long toElement, boolean toInclusive) {
+        if (descending ? fromElement < toElement : fromElement > toElement) {
+            throw new IllegalArgumentException();
+        }
+        return descending
+                ? range(toInclusive ? ceilingPosition(toElement) : higherPosition(toElement),
+                fromInclusive ? higherPosition(fromElement) : ceilingPosition(fromElement))
+                : range(fromInclusive ? ceilingPosition(fromElement) : higherPosition(fromElement),
+                toInclusive ? higherPosition(toElement) : ceilingPosition(toElement));
+    }
+
+    public LongArrayNavigableSet headSet(long toElement, boolean inclusive) {
+        return descending
+                ? range(inclusive ? ceilingPosition(toElement) : higherPosition(toElement), to)
+                : range(from, inclusive ? higherPosition(toElement) : ceilingPosition(toElement));
+    }
+
+    public LongArrayNavigableSet tailSet(long fromElement, boolean inclusive) {
+        return descending
+                ? range(from, inclusive ? higherPosition(fromElement) : ceilingPosition(fromElement))
+                : range(inclusive ? ceilingPosition(fromElement) : higherPosition(fromElement), to);
+    }
+
+    @Override
+    LongArrayNavigableSet range(int low, int high) {
+        return view(low, Math.max(low, high), descending);
+    }
+
+    @Override
+    public LongArrayNavigableSet subSet(Long fromElement, boolean fromInclusive, Long toElement, boolean toInclusive) {
+        return subSet((long) fromElement, fromInclusive, (long) toElement, toInclusive);
+    }
+
+    @Override
+    public LongArrayNavigableSet headSet(Long toElement, boolean inclusive) {
+        return headSet((long) toElement, inclusive);
+    }
+
+    @Override
+    public LongArrayNavigableSet tailSet(Long fromElement, boolean inclusive) {
+        return tailSet((long) fromElement, inclusive);
+    }
+
+    @Override
+    public LongArrayNavigableSet subSet(Long fromElement, Long toElement) {
+        return subSet((long) fromElement, true, (long) toElement, false);
+    }
+
+    @Override
+    public LongArrayNavigableSet headSet(Long toElement) {
+        return headSet((long) toElement, false);
+    }
+
+    @Override
+    public LongArrayNavigableSet tailSet(Long fromElement) {
+        return tailSet((long) fromElement, true);
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return element instanceof Long && containsLong((Long) element);
+    }
+
+    /**
+     * Returns which of the keys are in this set, in one pass over keys in iteration order.
+     */
+    public BitSet containsAll(long[] keys) {
+        BitSet result = new BitSet(keys.length);
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            if (index < size() && valueAt(index) == keys[i]) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores the indices of the ceilings of the keys, or {@code -1}, in one pass over keys in
+     * iteration order.
+     */
+    public void ceilingAll(long[] keys, int[] indices) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], false);
+            indices[i] = index < size() ? index : -1;
+        }
+    }
+
+    /**
+     * Stores the indices of the floors of the keys, or {@code -1}, in one pass over keys in
+     * iteration order.
+     */
+    public void floorAll(long[] keys, int[] indices) {
+        for (int i = 0, index = 0; i < keys.length; i++) {
+            index = gallop(restart(keys, i, index), keys[i], true);
+            indices[i] = index - 1;
+        }
+    }
+
+    private int restart(long[] keys, int i, int index) {
+        return i > 0 && (descending ? keys[i] > keys[i - 1] : keys[i] < keys[i - 1]) ? 0 : index;
+    }
+
+    private int gallop(int start, long key, boolean strict) {
+        int size = size();
+        int low = start - 1, high = start;
+        for (int step = 1; high < size && precedes(valueAt(high), key, strict); step <<= 1) {
+            low = high;
+            high = (int) Math.min(size, start + (long) step);
+        }
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (precedes(valueAt(middle), key, strict)) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private boolean precedes(long value, long key, boolean strict) {
+        if (descending) {
+            return strict ? value >= key : value > key;
+        }
+        return strict ? value <= key : value < key;
+    }
+
+    private long valueAt(int index) {
+        return data[descending ? to - 1 - index : from + index];
+    }
+
+    private class RangeSpliterator implements Spliterator.OfLong {
+        private int index;
+        private final int end;
+
+        RangeSpliterator(int index, int end) {
+            this.index = index;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(valueAt(index++));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(LongConsumer action) {
+            for (int i = index; i < end; i++) {
+                action.accept(valueAt(i));
+            }
+            index = end;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator.OfLong prefix = new RangeSpliterator(index, middle);
+            index = middle;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS | Spliterator.NONNULL;
+        }
+
+        @Override
+        public Comparator<? super Long> getComparator() {
+            return comparator();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+
+/**
+ * Navigable set of {@code long} keys read from a memory-mapped file written by
+ * {@link MappedLongSetWriter}. Opening maps the file and reads only its header, so the keys take
+ * no heap and are paged in by searches. Views share the mapping, as views of array sets do.
+ * <p>
+ * File format: magic and version as ints, key count as a long, followed by the distinct keys in
+ * ascending order as big-endian longs. The file is mapped in segments of {@code 2^30} bytes;
+ * keys never cross a segment boundary because the header and the keys are 8-byte aligned.
+ */
+public class MappedLongNavigableSet extends AbstractArrayNavigableSet<Long> {
+    static final int MAGIC = 0x4c534554;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments;
+
+    private MappedLongNavigableSet(ByteBuffer[] segments, int from, int to, boolean descending) {
+        super(from, to, descending);
+        this.segments = segments;
+    }
+
+    public static MappedLongNavigableSet open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a key set: " + file);
+            }
+            ByteBuffer[] segments = new ByteBuffer[(int) ((size - 1 >>> SEGMENT_SHIFT) + 1)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 1L << SEGMENT_SHIFT));
+            }
+            ByteBuffer header = segments[0];
+            if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION) {
+                throw new IOException("Unsupported key set format: " + file);
+            }
+            long count = header.getLong(2 * Integer.BYTES);
+            if (count < 0 || count > Integer.MAX_VALUE || size != HEADER_SIZE + count * Long.BYTES) {
+                throw new IOException("Corrupted key set: " + file);
+            }
+            return new MappedLongNavigableSet(segments, 0, (int) count, false);
+        }
+    }
+
+    private long key(int position) {
+        long offset = HEADER_SIZE + (long) position * Long.BYTES;
+        return segments[(int) (offset >>> SEGMENT_SHIFT)].getLong((int) (offset & SEGMENT_MASK));
+    }
+
+    private int ceilingPosition(long key) {
+        int low = from, high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int higherPosition(long key) {
+        return key == Long.MAX_VALUE ? to : ceilingPosition(key + 1);
+    }
+
+    @Override
+    Long elementAt(int position) {
+        return key(position);
+    }
+
+    @Override
+    int ceilingPosition(Long key) {
+        return ceilingPosition((long) key);
+    }
+
+    @Override
+    int higherPosition(Long key) {
+        return higherPosition((long) key);
+    }
+
+    @Override
+    MappedLongNavigableSet view(int from, int to, boolean descending) {
+        return new MappedLongNavigableSet(segments, from, to, descending);
+    }
+
+    @Override
+    Comparator<? super Long> ascendingComparator() {
+        return null;
+    }
+
+    public long getLong(int index) {
+        return key(position(index));
+    }
+
+    public boolean containsLong(long key) {
+        int position = ceilingPosition(key);
+        return position < to && key(position) == key;
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return element instanceof Long && containsLong((Long) element);
+    }
+}
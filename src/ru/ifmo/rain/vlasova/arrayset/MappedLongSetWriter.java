@@ -0,0 +1,61 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a file of keys for {@link MappedLongNavigableSet}. Keys must be added in strictly
+ * ascending order; the header is completed on {@link #close()}.
+ */
+public class MappedLongSetWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long count;
+    private long last;
+
+    public MappedLongSetWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MappedLongNavigableSet.MAGIC).putInt(MappedLongNavigableSet.VERSION).putLong(0);
+    }
+
+    public void add(long key) throws IOException {
+        if (count > 0 && key <= last) {
+            throw new IllegalArgumentException("Keys must be strictly ascending: " + key + " after " + last);
+        }
+        if (count == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many keys");
+        }
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.putLong(key);
+        last = key;
+        count++;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            buffer.putLong(count).flip();
+            channel.write(buffer, 2 * Integer.BYTES);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,740 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Mutable navigable set kept as an immutable sorted base array and a bounded delta: a sorted array
+ * of added elements and the sorted positions of removed base elements. A lookup binary-searches
+ * the base and the delta. An update moves at most the delta, which is merged into a new base once
+ * it holds more than {@code max(32, sqrt(n))} entries, so an update takes O(sqrt(n)) amortized
+ * moves, mostly by {@link System#arraycopy}.
+ * <p>
+ * Positions of this set are ranks among all its elements. Views are live: they share the storage
+ * with the set, see and make its changes, and are bounded by keys, so their positions are
+ * recomputed by rank on each call.
+ */
+public class MutableArrayNavigableSet<T> extends AbstractArrayNavigableSet<T> {
+    private final Store<T> store;
+    private final boolean fromStart, toEnd;
+    private final T low, high;
+    private final boolean lowInclusive, highInclusive;
+
+    public MutableArrayNavigableSet() {
+        this((Comparator<? super T>) null);
+    }
+
+    public MutableArrayNavigableSet(Comparator<? super T> cmp) {
+        this(new Store<>(new Object[0], cmp));
+    }
+
+    public MutableArrayNavigableSet(Collection<? extends T> other) {
+        this(other, null);
+    }
+
+    public MutableArrayNavigableSet(Collection<? extends T> other, Comparator<? super T> cmp) {
+        this(new Store<>(SortedArrays.sortedDistinct(other, cmp), cmp));
+    }
+
+    private MutableArrayNavigableSet(Store<T> store) {
+        this(store, true, null, false, true, null, false, false);
+    }
+
+    private MutableArrayNavigableSet(Store<T> store, boolean fromStart, T low, boolean lowInclusive,
+                                     boolean toEnd, T high, boolean highInclusive, boolean descending) {
+        // the range is computed by from() and to()
+        super(0, 0, descending);
+        this.store = store;
+        this.fromStart = fromStart;
+        this.low = low;
+        this.lowInclusive = lowInclusive;
+        this.toEnd = toEnd;
+        this.high = high;
+        this.highInclusive = highInclusive;
+    }
+
+    /**
+     * Storage shared by a set and its views. All positions and orders here are ascending.
+     */
+    private static class Store<T> {
+        private static final int MIN_DELTA = 32;
+
+        private final Comparator<? super T> comparator;
+        /**
+         * Never written after it is built, so it may back snapshots.
+         */
+        private Object[] base;
+        private Object[] added = new Object[MIN_DELTA];
+        private int[] removed = new int[MIN_DELTA];
+        private int addedSize, removedSize, limit;
+        private int size, modCount, folds;
+
+        Store(Object[] sorted, Comparator<? super T> comparator) {
+            this.comparator = comparator;
+            setBase(sorted);
+        }
+
+        private void setBase(Object[] sorted) {
+            base = sorted;
+            size = sorted.length;
+            limit = Math.max(MIN_DELTA, (int) Math.sqrt(sorted.length));
+            Arrays.fill(added, 0, addedSize, null);
+            addedSize = removedSize = 0;
+            folds++;
+        }
+
+        @SuppressWarnings("unchecked")
+        int compare(T a, T b) {
+            return comparator == null ? ((Comparable<? super T>) a).compareTo(b) : comparator.compare(a, b);
+        }
+
+        @SuppressWarnings("unchecked")
+        private T base(int position) {
+            return (T) base[position];
+        }
+
+        @SuppressWarnings("unchecked")
+        private T added(int index) {
+            return (T) added[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        private int searchBase(T key, int from) {
+            return Arrays.binarySearch((T[]) base, from, base.length, key, comparator);
+        }
+
+        @SuppressWarnings("unchecked")
+        private int searchAdded(T key) {
+            return Arrays.binarySearch((T[]) added, 0, addedSize, key, comparator);
+        }
+
+        /**
+         * Converts a result of a binary search to the number of entries less than the key, or not
+         * greater if {@code inclusive}.
+         */
+        private static int count(int index, boolean inclusive) {
+            return index >= 0 ? (inclusive ? index + 1 : index) : -index - 1;
+        }
+
+        private int removedBefore(int position) {
+            return count(Arrays.binarySearch(removed, 0, removedSize, position), false);
+        }
+
+        boolean contains(T key) {
+            int index = searchBase(key, 0);
+            return index >= 0 ? Arrays.binarySearch(removed, 0, removedSize, index) < 0 : searchAdded(key) >= 0;
+        }
+
+        boolean add(T element) {
+            if (size == 0) {
+                // type and null check, as TreeMap does for its first key
+                compare(element, element);
+            }
+            int index = searchBase(element, 0);
+            if (index >= 0) {
+                int r = Arrays.binarySearch(removed, 0, removedSize, index);
+                if (r < 0) {
+                    return false;
+                }
+                System.arraycopy(removed, r + 1, removed, r, --removedSize - r);
+            } else {
+                int a = searchAdded(element);
+                if (a >= 0) {
+                    return false;
+                }
+                a = -a - 1;
+                if (addedSize == added.length) {
+                    added = Arrays.copyOf(added, addedSize * 2);
+                }
+                System.arraycopy(added, a, added, a + 1, addedSize++ - a);
+                added[a] = element;
+            }
+            size++;
+            changed();
+            return true;
+        }
+
+        boolean remove(T element) {
+            int index = searchBase(element, 0);
+            if (index >= 0) {
+                int r = Arrays.binarySearch(removed, 0, removedSize, index);
+                if (r >= 0) {
+                    return false;
+                }
+                r = -r - 1;
+                if (removedSize == removed.length) {
+                    removed = Arrays.copyOf(removed, removedSize * 2);
+                }
+                System.arraycopy(removed, r, removed, r + 1, removedSize++ - r);
+                removed[r] = index;
+            } else {
+                int a = searchAdded(element);
+                if (a < 0) {
+                    return false;
+                }
+                System.arraycopy(added, a + 1, added, a, --addedSize - a);
+                added[addedSize] = null;
+            }
+            size--;
+            changed();
+            return true;
+        }
+
+        private void changed() {
+            modCount++;
+            if (addedSize + removedSize > limit) {
+                fold();
+            }
+        }
+
+        /**
+         * Merges the delta into a new base, copying the runs of base elements between the
+         * entries of the delta.
+         */
+        void fold() {
+            if (addedSize + removedSize == 0) {
+                return;
+            }
+            Object[] next = new Object[size];
+            int count = 0, position = 0, k = 0;
+            for (int j = 0; j <= addedSize; j++) {
+                int end = j < addedSize ? -searchBase(added(j), position) - 1 : base.length;
+                for (; k < removedSize && removed[k] < end; k++) {
+                    System.arraycopy(base, position, next, count, removed[k] - position);
+                    count += removed[k] - position;
+                    position = removed[k] + 1;
+                }
+                System.arraycopy(base, position, next, count, end - position);
+                count += end - position;
+                position = end;
+                if (j < addedSize) {
+                    next[count++] = added[j];
+                }
+            }
+            setBase(next);
+        }
+
+        void clear() {
+            setBase(new Object[0]);
+            modCount++;
+        }
+
+        /**
+         * Returns the number of elements less than the key, or not greater if {@code inclusive}.
+         */
+        int rank(T key, boolean inclusive) {
+            int position = count(searchBase(key, 0), inclusive);
+            return position - removedBefore(position) + count(searchAdded(key), inclusive);
+        }
+
+        /**
+         * Returns the rank of an added element.
+         */
+        private int addedRank(int index) {
+            int position = -searchBase(added(index), 0) - 1;
+            return index + position - removedBefore(position);
+        }
+
+        /**
+         * Returns the number of added elements of ranks less than the given one.
+         */
+        private int addedBefore(int rank) {
+            int low = -1, high = addedSize;
+            while (high - low > 1) {
+                int middle = (low + high) >>> 1;
+                if (addedRank(middle) < rank) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return high;
+        }
+
+        /**
+         * Returns the number of removed positions before the base element that has the given
+         * number of kept elements before it. Positions less by their index in {@code removed} than
+         * the count precede it.
+         */
+        private int removedBeforeKept(int kept) {
+            int low = -1, high = removedSize;
+            while (high - low > 1) {
+                int middle = (low + high) >>> 1;
+                if (removed[middle] - middle <= kept) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return high;
+        }
+
+        T select(int rank) {
+            int j = addedBefore(rank);
+            if (j < addedSize && addedRank(j) == rank) {
+                return added(j);
+            }
+            int kept = rank - j;
+            return base(kept + removedBeforeKept(kept));
+        }
+
+        /**
+         * Returns the least element not less than the key, or greater than it if not
+         * {@code inclusive}; the least element if the key is {@code null}.
+         */
+        T ceiling(T key, boolean inclusive) {
+            int position = key == null ? 0 : count(searchBase(key, 0), !inclusive);
+            for (int k = removedBefore(position); k < removedSize && removed[k] == position; k++) {
+                position++;
+            }
+            int j = key == null ? 0 : count(searchAdded(key), !inclusive);
+            if (j == addedSize) {
+                return position < base.length ? base(position) : null;
+            }
+            return position < base.length && compare(base(position), added(j)) < 0 ? base(position) : added(j);
+        }
+
+        /**
+         * Returns the greatest element not greater than the key, or less than it if not
+         * {@code inclusive}; the greatest element if the key is {@code null}.
+         */
+        T floor(T key, boolean inclusive) {
+            int position = (key == null ? base.length : count(searchBase(key, 0), inclusive)) - 1;
+            for (int k = removedBefore(position + 1); k > 0 && removed[k - 1] == position; k--) {
+                position--;
+            }
+            int j = (key == null ? addedSize : count(searchAdded(key), inclusive)) - 1;
+            if (j < 0) {
+                return position >= 0 ? base(position) : null;
+            }
+            return position >= 0 && compare(base(position), added(j)) > 0 ? base(position) : added(j);
+        }
+
+        /**
+         * Merge-walk over the base and the delta from a gap between two ranks. It is positioned
+         * again by its rank after the delta is folded.
+         */
+        class Cursor {
+            private int rank, folds;
+            private int i, j, k;
+
+            Cursor(int rank) {
+                seek(rank);
+            }
+
+            void seek(int rank) {
+                this.rank = rank;
+                folds = Store.this.folds;
+                j = addedBefore(rank);
+                k = removedBeforeKept(rank - j);
+                i = rank - j + k;
+            }
+
+            /**
+             * Returns the element of the rank after the gap and moves past it.
+             */
+            T next() {
+                if (folds != Store.this.folds) {
+                    seek(rank);
+                }
+                rank++;
+                for (; k < removedSize && removed[k] == i; k++) {
+                    i++;
+                }
+                if (j < addedSize && (i == base.length || compare(added(j), base(i)) < 0)) {
+                    return added(j++);
+                }
+                return base(i++);
+            }
+
+            /**
+             * Returns the element of the rank before the gap and moves before it.
+             */
+            T previous() {
+                if (folds != Store.this.folds) {
+                    seek(rank);
+                }
+                rank--;
+                for (; k > 0 && removed[k - 1] == i - 1; k--) {
+                    i--;
+                }
+                if (j > 0 && (i == 0 || compare(added(j - 1), base(i - 1)) > 0)) {
+                    return added(--j);
+                }
+                return base(--i);
+            }
+        }
+    }
+
+    @Override
+    int from() {
+        return fromStart ? 0 : store.rank(low, !lowInclusive);
+    }
+
+    @Override
+    int to() {
+        return toEnd ? store.size : Math.max(from(), store.rank(high, highInclusive));
+    }
+
+    @Override
+    T elementAt(int position) {
+        return store.select(position);
+    }
+
+    @Override
+    int ceilingPosition(T key) {
+        return Math.max(from(), Math.min(to(), store.rank(key, false)));
+    }
+
+    @Override
+    int higherPosition(T key) {
+        return Math.max(from(), Math.min(to(), store.rank(key, true)));
+    }
+
+    /**
+     * Returns this range in the given order. Views are bounded by keys, as positions move when the
+     * set changes, so only the whole range, which {@link #descendingSet} asks for, is supported.
+     */
+    @Override
+    MutableArrayNavigableSet<T> view(int from, int to, boolean descending) {
+        return new MutableArrayNavigableSet<>(store, fromStart, low, lowInclusive, toEnd, high, highInclusive, descending);
+    }
+
+    @Override
+    Comparator<? super T> ascendingComparator() {
+        return store.comparator;
+    }
+
+    /**
+     * Returns the current elements of this set as an immutable set. The delta is folded first,
+     * so the snapshot shares the base array without copying it.
+     */
+    public ArrayNavigableSet<T> snapshot() {
+        store.fold();
+        return ArrayNavigableSet.<T>ofSortedDistinct(store.base, store.comparator).view(from(), to(), descending);
+    }
+
+    private boolean tooLow(T key) {
+        if (fromStart) {
+            return false;
+        }
+        int order = store.compare(key, low);
+        return order < 0 || order == 0 && !lowInclusive;
+    }
+
+    private boolean tooHigh(T key) {
+        if (toEnd) {
+            return false;
+        }
+        int order = store.compare(key, high);
+        return order > 0 || order == 0 && !highInclusive;
+    }
+
+    private boolean inRange(T key) {
+        return !tooLow(key) && !tooHigh(key);
+    }
+
+    /**
+     * Tells whether a key may bound a view of this set: an exclusive bound may be equal to an
+     * excluded bound of this set.
+     */
+    private boolean inRange(T key, boolean inclusive) {
+        return inclusive
+                ? inRange(key)
+                : (fromStart || store.compare(key, low) >= 0) && (toEnd || store.compare(key, high) <= 0);
+    }
+
+    private T lowest() {
+        T element = fromStart ? store.ceiling(null, true) : store.ceiling(low, lowInclusive);
+        return element == null || tooHigh(element) ? null : element;
+    }
+
+    private T highest() {
+        T element = toEnd ? store.floor(null, true) : store.floor(high, highInclusive);
+        return element == null || tooLow(element) ? null : element;
+    }
+
+    private T ascendingCeiling(T key, boolean inclusive) {
+        if (tooLow(key)) {
+            return lowest();
+        }
+        T element = store.ceiling(key, inclusive);
+        return element == null || tooHigh(element) ? null : element;
+    }
+
+    private T ascendingFloor(T key, boolean inclusive) {
+        if (tooHigh(key)) {
+            return highest();
+        }
+        T element = store.floor(key, inclusive);
+        return element == null || tooLow(element) ? null : element;
+    }
+
+    @Override
+    public T lower(T t) {
+        return descending ? ascendingCeiling(t, false) : ascendingFloor(t, false);
+    }
+
+    @Override
+    public T floor(T t) {
+        return descending ? ascendingCeiling(t, true) : ascendingFloor(t, true);
+    }
+
+    @Override
+    public T ceiling(T t) {
+        return descending ? ascendingFloor(t, true) : ascendingCeiling(t, true);
+    }
+
+    @Override
+    public T higher(T t) {
+        return descending ? ascendingFloor(t, false) : ascendingCeiling(t, false);
+    }
+
+    @Override
+    public T first() {
+        T element = descending ? highest() : lowest();
+        if (element == null) {
+            throw new NoSuchElementException();
+        }
+        return element;
+    }
+
+    @Override
+    public T last() {
+        T element = descending ? lowest() : highest();
+        if (element == null) {
+            throw new NoSuchElementException();
+        }
+        return element;
+    }
+
+    @Override
+    public T pollFirst() {
+        T element = descending ? highest() : lowest();
+        if (element != null) {
+            store.remove(element);
+        }
+        return element;
+    }
+
+    @Override
+    public T pollLast() {
+        T element = descending ? lowest() : highest();
+        if (element != null) {
+            store.remove(element);
+        }
+        return element;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object element) {
+        return inRange((T) element) && store.contains((T) element);
+    }
+
+    @Override
+    public boolean add(T element) {
+        if (!inRange(element)) {
+            throw new IllegalArgumentException("Element out of range");
+        }
+        return store.add(element);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object element) {
+        return inRange((T) element) && store.remove((T) element);
+    }
+
+    @Override
+    public void clear() {
+        if (fromStart && toEnd) {
+            store.clear();
+        } else {
+            super.clear();
+        }
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<>() {
+            private final Store<T>.Cursor cursor = store.new Cursor(descending ? to() : from());
+            private int remaining = size();
+            private T last;
+            private int expectedModCount = store.modCount;
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0;
+            }
+
+            @Override
+            public T next() {
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                if (store.modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                remaining--;
+                last = descending ? cursor.previous() : cursor.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                if (store.modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                store.remove(last);
+                cursor.seek(store.rank(last, false));
+                expectedModCount = store.modCount;
+                last = null;
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator that splits the range of this set in halves and walks each half with
+     * its own cursor. It fails on changes to the set made after it is created.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new CursorSpliterator(from(), to(), 0, size(), store.modCount);
+    }
+
+    private class CursorSpliterator implements Spliterator<T> {
+        private final int from, to, expectedModCount;
+        private int index;
+        private final int end;
+        private Store<T>.Cursor cursor;
+
+        CursorSpliterator(int from, int to, int index, int end, int expectedModCount) {
+            this.from = from;
+            this.to = to;
+            this.index = index;
+            this.end = end;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private T advance() {
+            if (store.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (cursor == null) {
+                cursor = store.new Cursor(descending ? to - index : from + index);
+            }
+            index++;
+            return descending ? cursor.previous() : cursor.next();
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (index >= end) {
+                return false;
+            }
+            action.accept(advance());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            while (index < end) {
+                action.accept(advance());
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int middle = (index + end) >>> 1;
+            if (middle <= index) {
+                return null;
+            }
+            Spliterator<T> prefix = new CursorSpliterator(from, to, index, middle, expectedModCount);
+            index = middle;
+            cursor = null;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS & ~Spliterator.IMMUTABLE;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            return comparator();
+        }
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> descendingSet() {
+        return (MutableArrayNavigableSet<T>) super.descendingSet();
+    }
+
+    private MutableArrayNavigableSet<T> range(boolean fromStart, T low, boolean lowInclusive,
+                                              boolean toEnd, T high, boolean highInclusive) {
+        if (!fromStart && !inRange(low, lowInclusive) || !toEnd && !inRange(high, highInclusive)) {
+            throw new IllegalArgumentException("Bound out of range");
+        }
+        if (fromStart) {
+            fromStart = this.fromStart;
+            low = this.low;
+            lowInclusive = this.lowInclusive;
+        }
+        if (toEnd) {
+            toEnd = this.toEnd;
+            high = this.high;
+            highInclusive = this.highInclusive;
+        }
+        return new MutableArrayNavigableSet<>(store, fromStart, low, lowInclusive, toEnd, high, highInclusive, descending);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> subSet(T fromElement, boolean fromInclusive, T toElement, boolean toInclusive) {
+        int order = store.compare(fromElement, toElement);
+        if (descending ? order < 0 : order > 0) {
+            throw new IllegalArgumentException();
+        }
+        return descending
+                ? range(false, toElement, toInclusive, false, fromElement, fromInclusive)
+                : range(false, fromElement, fromInclusive, false, toElement, toInclusive);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> headSet(T toElement, boolean inclusive) {
+        return descending
+                ? range(false, toElement, inclusive, true, null, false)
+                : range(true, null, false, false, toElement, inclusive);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> tailSet(T fromElement, boolean inclusive) {
+        return descending
+                ? range(true, null, false, false, fromElement, inclusive)
+                : range(false, fromElement, inclusive, true, null, false);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> subSet(T fromElement, T toElement) {
+        return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> headSet(T toElement) {
+        return headSet(toElement, false);
+    }
+
+    @Override
+    public MutableArrayNavigableSet<T> tailSet(T fromElement) {
+        return tailSet(fromElement, true);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.util.SortedSet;
+
+/**
+ * Sorted set with positional access. Ranks and indices are counted in the iteration order of
+ * the set, so for a view they start from its own first element.
+ */
+public interface RankedSet<T> extends SortedSet<T> {
+    /**
+     * Returns the number of elements of this set that precede the element.
+     * For an element of the set this is its index.
+     */
+    int rank(T element);
+
+    /**
+     * Returns the element at the index in iteration order.
+     *
+     * @throws IndexOutOfBoundsException if the index is not less than the size of the set
+     */
+    T select(int index);
+}
@@ -0,0 +1,62 @@
+package ru.ifmo.rain.vlasova.arrayset;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Bulk construction of sorted arrays of distinct elements.
+ */
+class SortedArrays {
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    private SortedArrays() {
+    }
+
+    /**
+     * Returns the elements sorted by the comparator, or by natural order if it is {@code null},
+     * keeping the first of equal elements, like {@link java.util.TreeSet#addAll} does.
+     * Input that is already sorted is not sorted again.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Object[] sortedDistinct(Collection<? extends T> collection, Comparator<? super T> cmp) {
+        Object[] elements = collection.toArray();
+        Comparator<Object> comparator = (Comparator<Object>) (cmp == null ? Comparator.naturalOrder() : cmp);
+        if (elements.length == 1) {
+            // type and null check, as TreeSet does for its first element
+            comparator.compare(elements[0], elements[0]);
+        }
+        if (!isSorted(elements, comparator)) {
+            if (elements.length > PARALLEL_THRESHOLD) {
+                Arrays.parallelSort(elements, comparator);
+            } else {
+                Arrays.sort(elements, comparator);
+            }
+        }
+        int size = 0;
+        for (Object element : elements) {
+            if (size == 0 || comparator.compare(elements[size - 1], element) != 0) {
+                elements[size++] = element;
+            }
+        }
+        return size == elements.length ? elements : Arrays.copyOf(elements, size);
+    }
+
+    /**
+     * Returns the {@link #sortedDistinct sorted distinct} elements as a fixed-size list.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> List<T> sortedDistinctList(Collection<? extends T> collection, Comparator<? super T> cmp) {
+        return Arrays.asList((T[]) sortedDistinct(collection, cmp));
+    }
+
+    private static boolean isSorted(Object[] elements, Comparator<Object> comparator) {
+        for (int i = 1; i < elements.length; i++) {
+            if (comparator.compare(elements[i - 1], elements[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
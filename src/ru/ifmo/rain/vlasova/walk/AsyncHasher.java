@@ -0,0 +1,276 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Hashes files through {@link AsynchronousFileChannel}s, keeping reads of many files in flight at
+ * once so that round trips to network and FUSE file systems overlap. Reads go into chunk buffers
+ * sized to the chunk, rounded up to a power of two, and the total capacity of the buffers caps the
+ * bytes in flight, so many small files can be read at once. Free buffers are pooled by size.
+ * Chunks of a file may complete in any order but are fed to its digests strictly in file order.
+ * Buffers are handed out to files in submission order, and {@link #hash} blocks while earlier
+ * files are still waiting for them.
+ */
+class AsyncHasher implements AutoCloseable {
+    private static final int CHUNK_SIZE = 1 << 18;
+    private static final int MIN_BUFFER_BITS = 12;
+
+    private final HashSpec spec;
+    private final ExecutorService executor;
+    private final List<ArrayDeque<ByteBuffer>> buffers = new ArrayList<>();
+    private final ArrayDeque<FileRead> waiting = new ArrayDeque<>();
+    private final long maxInFlight;
+    private long allocated;
+    private boolean dispatching;
+
+    AsyncHasher(HashSpec spec, long maxInFlight) {
+        this.spec = spec;
+        this.maxInFlight = Math.max(CHUNK_SIZE, maxInFlight);
+        for (int i = sizeClass(CHUNK_SIZE); i >= 0; i--) {
+            buffers.add(new ArrayDeque<>());
+        }
+        executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts reading the file and returns its future hash.
+     */
+    CompletableFuture<byte[]> hash(Path file) throws IOException {
+        AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, Set.of(StandardOpenOption.READ), executor);
+        FileRead read;
+        try {
+            read = new FileRead(channel, channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (read.size == 0) {
+            read.finish();
+            return read.result;
+        }
+        synchronized (this) {
+            waiting.add(read);
+            dispatch();
+            while (!waiting.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for read buffers");
+                }
+            }
+        }
+        return read.result;
+    }
+
+    private synchronized void dispatch() {
+        if (dispatching) {
+            return;
+        }
+        dispatching = true;
+        try {
+            while (!waiting.isEmpty()) {
+                FileRead read = waiting.peek();
+                if (read.failed) {
+                    waiting.poll();
+                    continue;
+                }
+                ByteBuffer buffer = take(read.nextLength());
+                if (buffer == null) {
+                    break;
+                }
+                if (read.issue(buffer)) {
+                    waiting.poll();
+                }
+            }
+        } finally {
+            dispatching = false;
+        }
+        if (waiting.isEmpty()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the index of the smallest buffer size that holds the given number of bytes.
+     */
+    private static int sizeClass(int length) {
+        return Math.max(0, Integer.SIZE - Integer.numberOfLeadingZeros(length - 1) - MIN_BUFFER_BITS);
+    }
+
+    /**
+     * Returns a free buffer for a chunk of the given length, or {@code null} if the bytes in flight
+     * are at the limit. Pooled buffers of other sizes are dropped to make room for a new one.
+     */
+    private ByteBuffer take(int length) {
+        int sizeClass = sizeClass(length);
+        ByteBuffer buffer = buffers.get(sizeClass).poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        int capacity = 1 << (sizeClass + MIN_BUFFER_BITS);
+        for (int i = buffers.size() - 1; allocated + capacity > maxInFlight && i >= 0; ) {
+            ByteBuffer dropped = buffers.get(i).poll();
+            if (dropped == null) {
+                i--;
+            } else {
+                allocated -= dropped.capacity();
+            }
+        }
+        if (allocated + capacity > maxInFlight) {
+            return null;
+        }
+        allocated += capacity;
+        return ByteBuffer.allocateDirect(capacity);
+    }
+
+    private synchronized void release(List<ByteBuffer> free) {
+        for (ByteBuffer buffer : free) {
+            buffers.get(sizeClass(buffer.capacity())).add(buffer.clear());
+        }
+        dispatch();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private class FileRead {
+        private final AsynchronousFileChannel channel;
+        private final long size;
+        private final HashAlgorithm.Digest[] digests;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final Map<Long, Chunk> completed = new HashMap<>();
+        private long issued, digested;
+        private volatile boolean failed;
+
+        FileRead(AsynchronousFileChannel channel, long size) {
+            this.channel = channel;
+            this.size = size;
+            digests = spec.algorithms().stream().map(HashAlgorithm::newDigest).toArray(HashAlgorithm.Digest[]::new);
+        }
+
+        int nextLength() {
+            return (int) Math.min(CHUNK_SIZE, size - issued);
+        }
+
+        /**
+         * Starts reading the next chunk and returns whether the whole file has been requested.
+         */
+        boolean issue(ByteBuffer buffer) {
+            Chunk chunk = new Chunk(this, buffer, issued, nextLength());
+            issued += chunk.length;
+            chunk.read();
+            return issued >= size;
+        }
+
+        void completed(Chunk chunk) {
+            List<ByteBuffer> free = new ArrayList<>();
+            synchronized (this) {
+                if (failed) {
+                    free.add(chunk.buffer);
+                } else {
+                    completed.put(chunk.position, chunk);
+                    for (Chunk next; (next = completed.remove(digested)) != null; digested += next.length) {
+                        next.buffer.flip();
+                        for (HashAlgorithm.Digest digest : digests) {
+                            digest.update(next.buffer);
+                            next.buffer.rewind();
+                        }
+                        free.add(next.buffer);
+                    }
+                    if (digested >= size) {
+                        finish();
+                    }
+                }
+            }
+            release(free);
+        }
+
+        void failed(Chunk chunk, Throwable exc) {
+            List<ByteBuffer> free = new ArrayList<>();
+            free.add(chunk.buffer);
+            synchronized (this) {
+                if (!failed) {
+                    failed = true;
+                    for (Chunk pending : completed.values()) {
+                        free.add(pending.buffer);
+                    }
+                    completed.clear();
+                    close();
+                    result.completeExceptionally(exc);
+                }
+            }
+            release(free);
+        }
+
+        void finish() {
+            byte[] hash = new byte[spec.length()];
+            for (int i = 0, offset = 0; i < digests.length; offset += spec.algorithms().get(i++).length()) {
+                digests[i].finish(hash, offset);
+            }
+            close();
+            result.complete(hash);
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class Chunk implements CompletionHandler<Integer, Void> {
+        private final FileRead file;
+        private final ByteBuffer buffer;
+        private final long position;
+        private final int length;
+
+        Chunk(FileRead file, ByteBuffer buffer, long position, int length) {
+            this.file = file;
+            this.buffer = buffer;
+            this.position = position;
+            this.length = length;
+            buffer.limit(length);
+        }
+
+        void read() {
+            file.channel.read(buffer, position + buffer.position(), null, this);
+        }
+
+        @Override
+        public void completed(Integer count, Void ignored) {
+            if (count > 0 && buffer.hasRemaining()) {
+                read();
+            } else {
+                file.completed(this);
+            }
+        }
+
+        @Override
+        public void failed(Throwable exc, Void ignored) {
+            file.failed(this, exc);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Progress of Walk over its input list: the number of input lines processed and the length of
+ * the output written for them. A checkpoint is saved after the output is forced to disk, at
+ * most once per interval, and replaces the previous one atomically.
+ * <p>
+ * File format: magic as an int followed by the line count and the output length as longs.
+ */
+class Checkpoint {
+    private static final int MAGIC = 0x43484b50;
+    private static final int SIZE = Integer.BYTES + 2 * Long.BYTES;
+
+    private final Path path, tempPath;
+    private final long interval;
+    private final ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+    private long lines, length;
+    private long nextSave;
+
+    Checkpoint(String file, int intervalSeconds) throws WalkingException {
+        try {
+            path = Paths.get(file);
+            tempPath = Paths.get(file + ".tmp");
+        } catch (InvalidPathException e) {
+            throw new WalkingException("Invalid checkpoint file " + file);
+        }
+        interval = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        nextSave = System.nanoTime() + interval;
+    }
+
+    /**
+     * Reads the last saved checkpoint. Without one the walk starts from the beginning.
+     */
+    void load() throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading
+            }
+            buffer.flip();
+            if (buffer.remaining() != SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Corrupted checkpoint " + path);
+            }
+            lines = buffer.getLong();
+            length = buffer.getLong();
+        }
+    }
+
+    long lines() {
+        return lines;
+    }
+
+    long length() {
+        return length;
+    }
+
+    /**
+     * Returns whether the interval since the last save has passed.
+     */
+    boolean isDue() {
+        return System.nanoTime() - nextSave >= 0;
+    }
+
+    /**
+     * Saves the checkpoint. The output must already be on disk up to {@code length} bytes.
+     */
+    void save(long lines, long length) throws IOException {
+        buffer.clear().putInt(MAGIC).putLong(lines).putLong(length).flip();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        this.lines = lines;
+        this.length = length;
+        nextSave = System.nanoTime() + interval;
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,147 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Finds groups of identical files under the roots listed in the input file. Files are bucketed
+ * by size, files with colliding sizes are compared by the hash of their first and last
+ * {@link #EDGE} bytes, and only files whose edge hashes match are hashed in full. Every group is
+ * written as soon as it is confirmed: one {@code <hash> <path>} line per file followed by an empty line.
+ */
+class DuplicateFinder {
+    private static final int EDGE = 1 << 16;
+
+    private final WalkOptions options;
+    private final HashSpec spec;
+    private final ThreadLocal<FileHasher> hashers;
+    private final Map<Long, List<Path>> sizes = new LinkedHashMap<>();
+    private final Set<Object> seen = new HashSet<>();
+
+    DuplicateFinder(WalkOptions options) throws WalkingException {
+        this.options = options;
+        spec = options.hash == HashSpec.DEFAULT ? HashSpec.parse("xxhash64") : options.hash;
+        hashers = ThreadLocal.withInitial(spec::newHasher);
+    }
+
+    void find(Path inputPath, Path outputPath) throws WalkingException {
+        try (BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+            Visitor visitor = new Visitor();
+            String root;
+            while ((root = reader.readLine()) != null) {
+                try {
+                    Files.walkFileTree(Paths.get(root), visitor);
+                } catch (InvalidPathException e) {
+                    System.err.println("Invalid path " + root);
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkingException("Can't read input file " + inputPath + ": " + e.getMessage());
+        }
+
+        ExecutorService workers = options.threads > 1 ? Executors.newFixedThreadPool(options.threads) : null;
+        try (ResultWriter writer = new ResultWriter(outputPath, spec, System.lineSeparator())) {
+            for (Map.Entry<Long, List<Path>> bucket : sizes.entrySet()) {
+                if (bucket.getValue().size() > 1) {
+                    boolean complete = bucket.getKey() <= 2 * EDGE;
+                    for (Map.Entry<ByteBuffer, List<Path>> candidates : group(bucket.getValue(), true, workers).entrySet()) {
+                        if (complete) {
+                            write(writer, candidates);
+                        } else {
+                            for (Map.Entry<ByteBuffer, List<Path>> duplicates : group(candidates.getValue(), false, workers).entrySet()) {
+                                write(writer, duplicates);
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkingException("Can't write output file " + outputPath + ": " + e.getMessage());
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    private Map<ByteBuffer, List<Path>> group(List<Path> files, boolean edges, ExecutorService workers) {
+        Map<ByteBuffer, List<Path>> groups = new LinkedHashMap<>();
+        if (files.size() < 2) {
+            return groups;
+        }
+        List<byte[]> hashes = hash(files, edges, workers);
+        for (int i = 0; i < files.size(); i++) {
+            if (hashes.get(i) != null) {
+                groups.computeIfAbsent(ByteBuffer.wrap(hashes.get(i)), hash -> new ArrayList<>()).add(files.get(i));
+            }
+        }
+        groups.values().removeIf(group -> group.size() < 2);
+        return groups;
+    }
+
+    private List<byte[]> hash(List<Path> files, boolean edges, ExecutorService workers) {
+        List<CompletableFuture<byte[]>> hashes = new ArrayList<>();
+        for (Path file : files) {
+            if (workers == null) {
+                hashes.add(CompletableFuture.completedFuture(hash(file, edges)));
+            } else {
+                hashes.add(CompletableFuture.supplyAsync(() -> hash(file, edges), workers));
+            }
+        }
+        List<byte[]> result = new ArrayList<>();
+        for (CompletableFuture<byte[]> hash : hashes) {
+            result.add(hash.join());
+        }
+        return result;
+    }
+
+    private byte[] hash(Path file, boolean edges) {
+        try {
+            FileHasher hasher = hashers.get();
+            return edges ? hasher.hashEdges(file, EDGE) : hasher.hash(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void write(ResultWriter writer, Map.Entry<ByteBuffer, List<Path>> group) throws IOException {
+        for (Path file : group.getValue()) {
+            writer.write(group.getKey().array(), file.toString());
+        }
+        writer.newLine();
+        writer.flush();
+    }
+
+    /**
+     * Identifies a file across overlapping roots and hard links: by its file key, or by its
+     * normalized absolute path where the file system has no keys.
+     */
+    private static Object identity(Path file, BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        return key != null ? key : file.toAbsolutePath().normalize();
+    }
+
+    private class Visitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isRegularFile() && seen.add(identity(file, attrs))) {
+                sizes.computeIfAbsent(attrs.size(), size -> new ArrayList<>()).add(file);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            System.err.println("Can't visit " + file + ": " + exc.getMessage());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
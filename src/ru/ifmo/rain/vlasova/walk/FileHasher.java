@@ -0,0 +1,158 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Computes the hashes of a {@link HashSpec} for files through a {@link FileChannel}, reading every
+ * file once for all digests. Files of at least {@link #MAP_THRESHOLD} bytes are memory-mapped in
+ * windows, smaller ones are read into a direct buffer owned by this hasher, so an instance must
+ * not be shared between threads.
+ */
+class FileHasher {
+    static final int FNV_OFFSET = 0x811c9dc5;
+    static final int FNV_PRIME = 0x01000193;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long MAP_THRESHOLD = 1 << 20;
+    private static final long MAP_WINDOW = 1 << 28;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final HashSpec spec;
+    private final HashAlgorithm.Digest[] digests;
+    private final WalkStats stats;
+
+    FileHasher(HashSpec spec, WalkStats stats) {
+        this.spec = spec;
+        this.stats = stats;
+        digests = spec.algorithms().stream().map(HashAlgorithm::newDigest).toArray(HashAlgorithm.Digest[]::new);
+    }
+
+    byte[] hash(Path file) throws IOException {
+        long start = stats == null ? 0 : System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (stats != null) {
+                stats.open(System.nanoTime() - start);
+            }
+            long size = channel.size();
+            try {
+                if (size >= MAP_THRESHOLD) {
+                    hashMapped(channel, size);
+                }
+                hashBuffered(channel);
+            } catch (IOException | RuntimeException e) {
+                finish();
+                throw e;
+            }
+            return finish();
+        } finally {
+            if (stats != null) {
+                stats.latency(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Hashes the first and the last {@code edge} bytes of the file, or the whole file if it is not longer than {@code 2 * edge}.
+     */
+    byte[] hashEdges(Path file, int edge) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            try {
+                if (size <= 2L * edge) {
+                    hashBuffered(channel);
+                } else {
+                    hashRange(channel, 0, edge);
+                    hashRange(channel, size - edge, edge);
+                }
+            } catch (IOException | RuntimeException e) {
+                finish();
+                throw e;
+            }
+            return finish();
+        }
+    }
+
+    private byte[] finish() {
+        byte[] hash = new byte[spec.length()];
+        int offset = 0;
+        for (int i = 0; i < digests.length; i++) {
+            digests[i].finish(hash, offset);
+            offset += spec.algorithms().get(i).length();
+        }
+        return hash;
+    }
+
+    private void hashMapped(FileChannel channel, long size) throws IOException {
+        long start = stats == null ? 0 : System.nanoTime();
+        for (long position = 0; position < size; position += MAP_WINDOW) {
+            update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position)));
+        }
+        channel.position(size);
+        if (stats != null) {
+            stats.hash(System.nanoTime() - start);
+            stats.hashed(size);
+        }
+    }
+
+    private void hashBuffered(FileChannel channel) throws IOException {
+        if (stats != null) {
+            hashBufferedTimed(channel);
+            return;
+        }
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            update(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void hashBufferedTimed(FileChannel channel) throws IOException {
+        buffer.clear();
+        long start = System.nanoTime();
+        for (int read; (read = channel.read(buffer)) != -1; ) {
+            long hashStart = System.nanoTime();
+            stats.read(hashStart - start, read);
+            buffer.flip();
+            update(buffer);
+            buffer.clear();
+            start = System.nanoTime();
+            stats.hash(start - hashStart);
+        }
+        stats.read(System.nanoTime() - start, 0);
+    }
+
+    private void hashRange(FileChannel channel, long position, int length) throws IOException {
+        while (length > 0) {
+            buffer.clear().limit(Math.min(length, BUFFER_SIZE));
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                break;
+            }
+            buffer.flip();
+            update(buffer);
+            position += read;
+            length -= read;
+        }
+    }
+
+    private void update(ByteBuffer data) {
+        int start = data.position();
+        for (HashAlgorithm.Digest digest : digests) {
+            data.position(start);
+            digest.update(data);
+        }
+    }
+
+    static int update(int hash, ByteBuffer data) {
+        for (int i = data.position(), limit = data.limit(); i < limit; i++) {
+            hash = (hash * FNV_PRIME) ^ (data.get(i) & 0xff);
+        }
+        data.position(data.limit());
+        return hash;
+    }
+}
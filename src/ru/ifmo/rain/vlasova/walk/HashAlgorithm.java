@@ -0,0 +1,50 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash function that can be selected with the {@code --hash} option. Besides the built-in
+ * algorithms, implementations are discovered through {@link java.util.ServiceLoader}.
+ */
+public interface HashAlgorithm {
+    /**
+     * Returns the name used to select this algorithm.
+     *
+     * @return algorithm name
+     */
+    String name();
+
+    /**
+     * Returns the length of the produced digest.
+     *
+     * @return digest length in bytes
+     */
+    int length();
+
+    /**
+     * Creates a new digest in its initial state.
+     *
+     * @return new digest
+     */
+    Digest newDigest();
+
+    /**
+     * Incremental hash state. A digest is reused for many files and is never shared between threads.
+     */
+    interface Digest {
+        /**
+         * Consumes bytes from the position to the limit of the buffer, advancing its position.
+         *
+         * @param data bytes to hash
+         */
+        void update(ByteBuffer data);
+
+        /**
+         * Stores the digest of all consumed bytes and resets the state.
+         *
+         * @param out    destination array
+         * @param offset position of the first digest byte in {@code out}
+         */
+        void finish(byte[] out, int offset);
+    }
+}
@@ -0,0 +1,138 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ServiceLoader;
+import java.util.zip.CRC32C;
+
+/**
+ * Built-in {@link HashAlgorithm hash algorithms} and lookup by name.
+ */
+final class HashAlgorithms {
+    static final HashAlgorithm FNV1A = new Fnv1a();
+
+    private static final HashAlgorithm[] BUILT_IN = {FNV1A, new Crc32c(), new XxHash64(), new Sha256()};
+
+    private HashAlgorithms() {
+    }
+
+    static HashAlgorithm forName(String name) throws WalkingException {
+        for (HashAlgorithm algorithm : BUILT_IN) {
+            if (algorithm.name().equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        for (HashAlgorithm algorithm : ServiceLoader.load(HashAlgorithm.class)) {
+            if (algorithm.name().equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new WalkingException("Unknown hash algorithm " + name);
+    }
+
+    private static void putInt(int value, byte[] out, int offset) {
+        out[offset] = (byte) (value >>> 24);
+        out[offset + 1] = (byte) (value >>> 16);
+        out[offset + 2] = (byte) (value >>> 8);
+        out[offset + 3] = (byte) value;
+    }
+
+    private static class Fnv1a implements HashAlgorithm {
+        @Override
+        public String name() {
+            return "fnv1a";
+        }
+
+        @Override
+        public int length() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public Digest newDigest() {
+            return new Digest() {
+                private int hash = FileHasher.FNV_OFFSET;
+
+                @Override
+                public void update(ByteBuffer data) {
+                    hash = FileHasher.update(hash, data);
+                }
+
+                @Override
+                public void finish(byte[] out, int offset) {
+                    putInt(hash, out, offset);
+                    hash = FileHasher.FNV_OFFSET;
+                }
+            };
+        }
+    }
+
+    private static class Crc32c implements HashAlgorithm {
+        @Override
+        public String name() {
+            return "crc32c";
+        }
+
+        @Override
+        public int length() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        public Digest newDigest() {
+            return new Digest() {
+                private final CRC32C crc = new CRC32C();
+
+                @Override
+                public void update(ByteBuffer data) {
+                    crc.update(data);
+                }
+
+                @Override
+                public void finish(byte[] out, int offset) {
+                    putInt((int) crc.getValue(), out, offset);
+                    crc.reset();
+                }
+            };
+        }
+    }
+
+    private static class Sha256 implements HashAlgorithm {
+        @Override
+        public String name() {
+            return "sha256";
+        }
+
+        @Override
+        public int length() {
+            return 32;
+        }
+
+        @Override
+        public Digest newDigest() {
+            MessageDigest messageDigest;
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported", e);
+            }
+            return new Digest() {
+                @Override
+                public void update(ByteBuffer data) {
+                    messageDigest.update(data);
+                }
+
+                @Override
+                public void finish(byte[] out, int offset) {
+                    try {
+                        messageDigest.digest(out, offset, length());
+                    } catch (DigestException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent index of file hashes from the previous run. A file whose path, size, modification
+ * time and file key match the stored record gets its hash without being read. Records seen in
+ * the current run are streamed to a temporary file that atomically replaces the index on {@link #commit()}.
+ * An index written for different hash algorithms is ignored.
+ * <p>
+ * File format: magic, version, {@link HashSpec#key() hash spec key}, hash length and record count as ints,
+ * followed by fixed-width records of path hash, size, modification time in nanoseconds and file key hash
+ * as longs and the file hash bytes.
+ */
+class HashIndex implements AutoCloseable {
+    private static final int MAGIC = 0x57414c4b;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 5 * Integer.BYTES;
+    private static final int BUFFER_RECORDS = 1 << 14;
+
+    private final Path indexPath, tempPath;
+    private final HashSpec spec;
+    private final int hashLength, recordSize;
+    private final FileChannel output;
+    private final ByteBuffer outputBuffer;
+    private int outputCount;
+
+    private long[] keys, sizes, times, fileKeys;
+    private byte[] hashes;
+    private int mask;
+
+    HashIndex(String file, HashSpec spec) throws WalkingException {
+        this.spec = spec;
+        hashLength = spec.length();
+        recordSize = 4 * Long.BYTES + hashLength;
+        outputBuffer = ByteBuffer.allocateDirect(recordSize * BUFFER_RECORDS);
+        try {
+            indexPath = Paths.get(file);
+            tempPath = Paths.get(file + ".tmp");
+        } catch (InvalidPathException e) {
+            throw new WalkingException("Invalid index file " + file);
+        }
+        try {
+            load();
+        } catch (IOException e) {
+            throw new WalkingException("Can't read index file " + indexPath + ": " + e.getMessage());
+        }
+        try {
+            output = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            output.position(HEADER_SIZE);
+        } catch (IOException e) {
+            throw new WalkingException("Can't create index file " + tempPath + ": " + e.getMessage());
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(indexPath)) {
+            allocate(0);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(recordSize * BUFFER_RECORDS);
+            readFully(channel, buffer, HEADER_SIZE);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an index file");
+            }
+            if (buffer.getInt() != VERSION || buffer.getInt() != spec.key() || buffer.getInt() != hashLength) {
+                allocate(0);
+                return;
+            }
+            int count = buffer.getInt();
+            if (count < 0 || channel.size() != HEADER_SIZE + (long) count * recordSize) {
+                throw new IOException("Corrupted index");
+            }
+            allocate(count);
+            for (int remaining = count; remaining > 0; ) {
+                int batch = Math.min(remaining, BUFFER_RECORDS);
+                readFully(channel, buffer, batch * recordSize);
+                for (int i = 0; i < batch; i++) {
+                    put(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer);
+                }
+                remaining -= batch;
+            }
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new IOException("Unexpected end of index");
+            }
+        }
+        buffer.flip();
+    }
+
+    private void allocate(int count) {
+        int capacity = Integer.highestOneBit(Math.max(16, count + count / 3) - 1) << 1;
+        keys = new long[capacity];
+        sizes = new long[capacity];
+        times = new long[capacity];
+        fileKeys = new long[capacity];
+        hashes = new byte[capacity * hashLength];
+        mask = capacity - 1;
+    }
+
+    private void put(long key, long size, long time, long fileKey, ByteBuffer hash) {
+        int slot = find(key);
+        keys[slot] = key;
+        sizes[slot] = size;
+        times[slot] = time;
+        fileKeys[slot] = fileKey;
+        hash.get(hashes, slot * hashLength, hashLength);
+    }
+
+    private int find(long key) {
+        int slot = (int) (key ^ (key >>> 32)) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the hash of the given file, reading it only if its attributes differ from the stored record.
+     */
+    byte[] hash(Path file, String name, BasicFileAttributes attrs, FileHasher hasher) throws IOException {
+        byte[] hash = lookup(name, attrs);
+        if (hash == null) {
+            hash = hasher.hash(file);
+        }
+        record(name, attrs, hash);
+        return hash;
+    }
+
+    /**
+     * Returns the stored hash of an unchanged file or {@code null} if it has to be read.
+     */
+    byte[] lookup(String name, BasicFileAttributes attrs) {
+        long key = pathKey(name);
+        int slot = find(key);
+        if (keys[slot] == key && sizes[slot] == attrs.size()
+                && times[slot] == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && fileKeys[slot] == fileKey(attrs.fileKey())) {
+            return Arrays.copyOfRange(hashes, slot * hashLength, (slot + 1) * hashLength);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the hash of a file seen in the current run to the new index.
+     */
+    void record(String name, BasicFileAttributes attrs, byte[] hash) throws IOException {
+        record(pathKey(name), attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), fileKey(attrs.fileKey()), hash);
+    }
+
+    private synchronized void record(long key, long size, long time, long fileKey, byte[] hash) throws IOException {
+        if (outputBuffer.remaining() < recordSize) {
+            flushOutput();
+        }
+        outputBuffer.putLong(key).putLong(size).putLong(time).putLong(fileKey).put(hash);
+        outputCount++;
+    }
+
+    private void flushOutput() throws IOException {
+        outputBuffer.flip();
+        while (outputBuffer.hasRemaining()) {
+            output.write(outputBuffer);
+        }
+        outputBuffer.clear();
+    }
+
+    /**
+     * Writes the records of the current run and atomically replaces the previous index with them.
+     */
+    synchronized void commit() throws IOException {
+        flushOutput();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).putInt(VERSION).putInt(spec.key()).putInt(hashLength).putInt(outputCount);
+        header.flip();
+        output.write(header, 0);
+        output.force(true);
+        output.close();
+        Files.move(tempPath, indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output.isOpen()) {
+            output.close();
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private static long pathKey(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    static long fileKey(Object fileKey) {
+        return fileKey == null ? 0 : pathKey(fileKey.toString());
+    }
+}
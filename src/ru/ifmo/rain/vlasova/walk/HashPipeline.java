@@ -0,0 +1,113 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Hashes files on a pool of worker threads while handing the results to a {@link Sink}
+ * strictly in submission order. With a single thread every task runs inline on the caller.
+ * Without workers, the pipeline can still keep a window of hashes computed elsewhere.
+ */
+class HashPipeline implements AutoCloseable {
+    private static final int ENTRIES_PER_THREAD = 256;
+
+    private final ExecutorService workers;
+    private final ArrayDeque<Entry> pending = new ArrayDeque<>();
+    private final int window;
+    private final Sink sink;
+
+    HashPipeline(int threads, Sink sink) {
+        this.sink = sink;
+        if (threads > 1) {
+            workers = Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task);
+                thread.setDaemon(true);
+                return thread;
+            });
+            window = threads * ENTRIES_PER_THREAD;
+        } else {
+            workers = null;
+            window = 0;
+        }
+    }
+
+    HashPipeline(Sink sink, int window) {
+        this.sink = sink;
+        this.window = window;
+        workers = null;
+    }
+
+    CompletableFuture<byte[]> submit(String file, Supplier<byte[]> task) throws IOException {
+        if (workers == null) {
+            byte[] hash = task.get();
+            submit(file, hash);
+            return CompletableFuture.completedFuture(hash);
+        }
+        CompletableFuture<byte[]> hash = CompletableFuture.supplyAsync(task, workers);
+        enqueue(file, hash);
+        return hash;
+    }
+
+    void submit(String file, CompletableFuture<byte[]> hash) throws IOException {
+        if (window == 0) {
+            sink.write(hash.join(), file);
+        } else {
+            enqueue(file, hash);
+        }
+    }
+
+    void submit(String file, byte[] hash) throws IOException {
+        if (window == 0) {
+            sink.write(hash, file);
+        } else {
+            enqueue(file, CompletableFuture.completedFuture(hash));
+        }
+    }
+
+    private void enqueue(String file, CompletableFuture<byte[]> hash) throws IOException {
+        pending.add(new Entry(file, hash));
+        while (pending.size() > window) {
+            writeFirst();
+        }
+    }
+
+    private void writeFirst() throws IOException {
+        Entry entry = pending.poll();
+        sink.write(entry.hash.join(), entry.file);
+    }
+
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writeFirst();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    interface Sink {
+        void write(byte[] hash, String file) throws IOException;
+    }
+
+    private static class Entry {
+        private final String file;
+        private final CompletableFuture<byte[]> hash;
+
+        Entry(String file, CompletableFuture<byte[]> hash) {
+            this.file = file;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ordered set of hash algorithms computed for every file. A file hash is the concatenation of
+ * all digests, written as one hexadecimal column per algorithm.
+ */
+class HashSpec {
+    static final HashSpec DEFAULT = new HashSpec(List.of(HashAlgorithms.FNV1A));
+
+    private final List<HashAlgorithm> algorithms;
+    private final int length;
+    private final byte[] zero;
+
+    private HashSpec(List<HashAlgorithm> algorithms) {
+        this.algorithms = algorithms;
+        length = algorithms.stream().mapToInt(HashAlgorithm::length).sum();
+        zero = new byte[length];
+    }
+
+    static HashSpec parse(String names) throws WalkingException {
+        List<HashAlgorithm> algorithms = new ArrayList<>();
+        for (String name : names.split(",")) {
+            algorithms.add(HashAlgorithms.forName(name.trim()));
+        }
+        return new HashSpec(List.copyOf(algorithms));
+    }
+
+    List<HashAlgorithm> algorithms() {
+        return algorithms;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns the hash written for files that can't be read. The array must not be modified.
+     */
+    byte[] zero() {
+        return zero;
+    }
+
+    /**
+     * Returns a value identifying the algorithms and their order.
+     */
+    int key() {
+        StringBuilder names = new StringBuilder();
+        for (HashAlgorithm algorithm : algorithms) {
+            names.append(algorithm.name()).append(',');
+        }
+        return names.toString().hashCode();
+    }
+
+    FileHasher newHasher() {
+        return newHasher(null);
+    }
+
+    /**
+     * Returns a hasher that reports its timings to the stats, if they are not {@code null}.
+     */
+    FileHasher newHasher(WalkStats stats) {
+        return new FileHasher(this, stats);
+    }
+}
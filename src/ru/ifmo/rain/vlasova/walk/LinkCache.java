@@ -0,0 +1,96 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers hashes by {@link BasicFileAttributes#fileKey() file key}, so every hard link to an
+ * already hashed file reuses its hash. Completed hashes are kept in a fixed-size four-way
+ * set-associative table of primitive arrays that overwrites old entries when a set is full;
+ * hashes still being computed are tracked separately until they complete.
+ */
+class LinkCache {
+    private static final int WAYS = 4;
+
+    private final byte[] zero;
+    private final int hashLength;
+    private final long[] keys, sizes;
+    private final byte[] hashes;
+    private final int mask;
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private int next;
+
+    LinkCache(int capacity, HashSpec spec) {
+        zero = spec.zero();
+        hashLength = spec.length();
+        int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+        keys = new long[sets * WAYS];
+        sizes = new long[sets * WAYS];
+        hashes = new byte[sets * WAYS * hashLength];
+        mask = sets - 1;
+    }
+
+    /**
+     * Returns the hash of a file with the same key and size seen before, or {@code null} if there is none.
+     */
+    CompletableFuture<byte[]> get(BasicFileAttributes attrs) {
+        if (attrs.fileKey() == null) {
+            return null;
+        }
+        long key = HashIndex.fileKey(attrs.fileKey());
+        CompletableFuture<byte[]> hash = pending.get(key);
+        if (hash != null) {
+            return hash;
+        }
+        synchronized (this) {
+            int slot = find(key, attrs.size());
+            return slot < 0 ? null : CompletableFuture.completedFuture(
+                    Arrays.copyOfRange(hashes, slot * hashLength, (slot + 1) * hashLength));
+        }
+    }
+
+    /**
+     * Registers the hash of a file that has no entry yet.
+     */
+    void put(BasicFileAttributes attrs, CompletableFuture<byte[]> hash) {
+        if (attrs.fileKey() == null) {
+            return;
+        }
+        long key = HashIndex.fileKey(attrs.fileKey());
+        long size = attrs.size();
+        pending.put(key, hash);
+        hash.thenAccept(value -> {
+            if (value != zero) {
+                store(key, size, value);
+            }
+            pending.remove(key, hash);
+        });
+    }
+
+    private int find(long key, long size) {
+        int first = (int) (key ^ (key >>> 32)) & mask;
+        for (int slot = first * WAYS; slot < (first + 1) * WAYS; slot++) {
+            if (keys[slot] == key && sizes[slot] == size) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private synchronized void store(long key, long size, byte[] hash) {
+        int first = ((int) (key ^ (key >>> 32)) & mask) * WAYS;
+        int slot = first;
+        while (slot < first + WAYS && keys[slot] != 0 && keys[slot] != key) {
+            slot++;
+        }
+        if (slot == first + WAYS) {
+            slot = first + (next++ & (WAYS - 1));
+        }
+        keys[slot] = key;
+        sizes[slot] = size;
+        System.arraycopy(hash, 0, hashes, slot * hashLength, hashLength);
+    }
+}
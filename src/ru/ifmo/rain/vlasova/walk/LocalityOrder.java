@@ -0,0 +1,54 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Orders a batch of input paths by device and inode number, which on most file systems follows
+ * the on-disk placement of files closely enough to turn random seeks into a mostly forward sweep.
+ * Paths that can't be stated go last. Without the {@code unix} attribute view the input order
+ * is kept.
+ */
+class LocalityOrder {
+    private static final boolean SUPPORTED = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+
+    private final long[] devices, inodes;
+    private final Integer[] order;
+
+    LocalityOrder(int capacity) {
+        devices = new long[capacity];
+        inodes = new long[capacity];
+        order = new Integer[capacity];
+    }
+
+    /**
+     * Returns the indices of the first {@code size} paths in the order they should be read.
+     * The returned array is reused by the next call.
+     */
+    Integer[] sort(String[] paths, int size) {
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        if (!SUPPORTED || size < 2) {
+            return order;
+        }
+        for (int i = 0; i < size; i++) {
+            try {
+                Map<String, Object> attributes = Files.readAttributes(Paths.get(paths[i]), "unix:dev,ino");
+                devices[i] = (Long) attributes.get("dev");
+                inodes[i] = (Long) attributes.get("ino");
+            } catch (IOException | InvalidPathException | UnsupportedOperationException e) {
+                devices[i] = Long.MAX_VALUE;
+                inodes[i] = i;
+            }
+        }
+        Arrays.sort(order, 0, size, Comparator.<Integer>comparingLong(i -> devices[i]).thenComparingLong(i -> inodes[i]));
+        return order;
+    }
+}
@@ -0,0 +1,240 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Compares two outputs of {@code RecursiveWalk --merkle} top-down. Roots are matched by their
+ * position in the input, entries inside directories by name. Only directories whose digests
+ * differ are descended into, so the work is proportional to the number of changes.
+ * Prints {@code - path} for entries only in the first output, {@code + path} for entries only in
+ * the second one and {@code * path} for files with different hashes.
+ */
+public class MerkleDiff {
+    private final Listing left, right;
+
+    public static void main(String[] args) {
+        try {
+            if (args != null && args.length == 2 && args[0] != null && args[1] != null) {
+                try (Listing left = new Listing(getPath(args[0])); Listing right = new Listing(getPath(args[1]))) {
+                    new MerkleDiff(left, right).compare();
+                } catch (IOException e) {
+                    throw new WalkingException("Can't compare outputs: " + e.getMessage());
+                }
+            } else {
+                throw new WalkingException("Expected two arguments");
+            }
+        } catch (WalkingException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private static Path getPath(String file) throws WalkingException {
+        try {
+            return Paths.get(file);
+        } catch (InvalidPathException e) {
+            throw new WalkingException("Invalid path " + file);
+        }
+    }
+
+    private MerkleDiff(Listing left, Listing right) {
+        this.left = left;
+        this.right = right;
+    }
+
+    private void compare() throws IOException {
+        List<Entry> leftRoots = left.entries(0, left.size());
+        List<Entry> rightRoots = right.entries(0, right.size());
+        for (int i = 0; i < Math.max(leftRoots.size(), rightRoots.size()); i++) {
+            if (i >= rightRoots.size()) {
+                System.out.println("- " + leftRoots.get(i).path);
+            } else if (i >= leftRoots.size()) {
+                System.out.println("+ " + rightRoots.get(i).path);
+            } else {
+                compare(leftRoots.get(i), rightRoots.get(i));
+            }
+        }
+    }
+
+    private void compare(Entry leftEntry, Entry rightEntry) throws IOException {
+        if (leftEntry.hash.equals(rightEntry.hash) && leftEntry.isDirectory() == rightEntry.isDirectory()) {
+            return;
+        }
+        if (!leftEntry.isDirectory() || !rightEntry.isDirectory()) {
+            System.out.println("* " + leftEntry.path);
+            return;
+        }
+        Map<String, Entry> leftChildren = byName(left.entries(left.subtreeStart(leftEntry.offset), leftEntry.offset));
+        Map<String, Entry> rightChildren = byName(right.entries(right.subtreeStart(rightEntry.offset), rightEntry.offset));
+        for (Map.Entry<String, Entry> child : leftChildren.entrySet()) {
+            Entry other = rightChildren.get(child.getKey());
+            if (other == null) {
+                System.out.println("- " + child.getValue().path);
+            } else {
+                compare(child.getValue(), other);
+            }
+        }
+        for (Map.Entry<String, Entry> child : rightChildren.entrySet()) {
+            if (!leftChildren.containsKey(child.getKey())) {
+                System.out.println("+ " + child.getValue().path);
+            }
+        }
+    }
+
+    private static Map<String, Entry> byName(List<Entry> entries) {
+        Map<String, Entry> result = new TreeMap<>();
+        for (Entry entry : entries) {
+            result.put(entry.name(), entry);
+        }
+        return result;
+    }
+
+    private static class Entry {
+        private final String hash, path;
+        private final long offset;
+
+        Entry(String hash, String path, long offset) {
+            this.hash = hash;
+            this.path = path;
+            this.offset = offset;
+        }
+
+        boolean isDirectory() {
+            return path.endsWith("/") || path.endsWith("\\");
+        }
+
+        String name() {
+            int end = isDirectory() ? path.length() - 1 : path.length();
+            int start = Math.max(path.lastIndexOf('/', end - 1), path.lastIndexOf('\\', end - 1)) + 1;
+            return path.substring(start, end);
+        }
+    }
+
+    /**
+     * Output of RecursiveWalk with the index of its directory lines.
+     */
+    private static class Listing implements AutoCloseable {
+        private static final int BLOCK = 1 << 12;
+        private static final int RECORD = 2 * Long.BYTES;
+        private static final int HEADER = 3 * Integer.BYTES;
+
+        private final FileChannel lines, directories;
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK);
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD);
+        private final int hashChars;
+        private final long directoryCount;
+
+        Listing(Path output) throws IOException {
+            lines = FileChannel.open(output, StandardOpenOption.READ);
+            try {
+                directories = FileChannel.open(output.resolveSibling(output.getFileName() + MerkleTree.SUFFIX), StandardOpenOption.READ);
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                read(directories, header, 0);
+                if (header.getInt() != MerkleTree.MAGIC || header.getInt() != MerkleTree.VERSION) {
+                    directories.close();
+                    throw new IOException("Unsupported directory index of " + output);
+                }
+                hashChars = header.getInt();
+                directoryCount = (directories.size() - HEADER) / RECORD;
+            } catch (IOException e) {
+                lines.close();
+                throw e;
+            }
+        }
+
+        long size() throws IOException {
+            return lines.size();
+        }
+
+        /**
+         * Returns the offset where the subtree of the directory line at the given offset starts.
+         */
+        long subtreeStart(long lineOffset) throws IOException {
+            long low = 0, high = directoryCount - 1;
+            while (low <= high) {
+                long middle = (low + high) >>> 1;
+                read(directories, record.clear(), HEADER + middle * RECORD);
+                long offset = record.getLong();
+                if (offset < lineOffset) {
+                    low = middle + 1;
+                } else if (offset > lineOffset) {
+                    high = middle - 1;
+                } else {
+                    return record.getLong();
+                }
+            }
+            throw new IOException("Directory index has no line at offset " + lineOffset);
+        }
+
+        /**
+         * Returns the entries at the top level of the given range, skipping nested subtrees.
+         */
+        List<Entry> entries(long from, long to) throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            while (to > from) {
+                Entry entry = lineBefore(from, to);
+                entries.add(entry);
+                to = entry.isDirectory() ? subtreeStart(entry.offset) : entry.offset;
+            }
+            Collections.reverse(entries);
+            return entries;
+        }
+
+        private Entry lineBefore(long from, long end) throws IOException {
+            long start = end - 1;
+            search:
+            while (start > from) {
+                long blockStart = Math.max(from, start - BLOCK);
+                read(lines, block.clear().limit((int) (start - blockStart)), blockStart);
+                for (int i = block.limit() - 1; i >= 0; i--) {
+                    if (block.get(i) == '\n') {
+                        start = blockStart + i + 1;
+                        break search;
+                    }
+                }
+                start = blockStart;
+            }
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line is too long at offset " + start);
+            }
+            ByteBuffer line = ByteBuffer.allocate((int) (end - start));
+            read(lines, line, start);
+            String text = StandardCharsets.UTF_8.decode(line).toString();
+            int length = text.length();
+            while (length > 0 && (text.charAt(length - 1) == '\n' || text.charAt(length - 1) == '\r')) {
+                length--;
+            }
+            if (length < hashChars) {
+                throw new IOException("Malformed line at offset " + start);
+            }
+            return new Entry(text.substring(0, hashChars - 1), text.substring(hashChars, length), start);
+        }
+
+        private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read == -1) {
+                    throw new IOException("Unexpected end of file");
+                }
+                position += read;
+            }
+            buffer.flip();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                lines.close();
+            } finally {
+                directories.close();
+            }
+        }
+    }
+}
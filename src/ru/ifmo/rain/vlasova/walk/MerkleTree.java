@@ -0,0 +1,113 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Computes directory digests for RecursiveWalk. The digest of a directory is computed by every
+ * algorithm of the spec over its children sorted by name, each contributing its name in UTF-8,
+ * a zero byte and its hash. A directory line is written after the lines of its contents, and its
+ * path ends with the name separator.
+ * <p>
+ * Alongside the output, an index of directory lines is written to {@code <output>.dirs}: magic,
+ * version and the length of the hash prefix of a line as ints, followed by a pair of longs for
+ * every directory line in output order: the offset of the line and the offset where the lines of
+ * its subtree start. {@link MerkleDiff} uses it to skip unchanged subtrees.
+ */
+class MerkleTree implements AutoCloseable {
+    static final int MAGIC = 0x4d524b4c;
+    static final int VERSION = 1;
+    static final String SUFFIX = ".dirs";
+
+    private final HashSpec spec;
+    private final int hashChars, separatorLength;
+    private final DataOutputStream index;
+    private final Deque<Directory> directories = new ArrayDeque<>();
+    private long offset;
+
+    MerkleTree(Path output, HashSpec spec, String lineSeparator) throws IOException {
+        this.spec = spec;
+        hashChars = 2 * spec.length() + spec.algorithms().size();
+        separatorLength = lineSeparator.getBytes(StandardCharsets.UTF_8).length;
+        index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output.resolveSibling(output.getFileName() + SUFFIX)), 1 << 16));
+        index.writeInt(MAGIC);
+        index.writeInt(VERSION);
+        index.writeInt(hashChars);
+    }
+
+    static String directoryName(Path directory) {
+        String name = directory.toString();
+        String separator = directory.getFileSystem().getSeparator();
+        return name.endsWith(separator) ? name : name + separator;
+    }
+
+    /**
+     * Accounts for a line about to be written.
+     */
+    void line(String name) {
+        offset += hashChars + ResultWriter.length(name) + separatorLength;
+    }
+
+    void enter() {
+        directories.push(new Directory(offset));
+    }
+
+    void child(Path file, CompletableFuture<byte[]> hash) {
+        if (!directories.isEmpty()) {
+            directories.peek().children.put(file.getFileName().toString(), hash);
+        }
+    }
+
+    /**
+     * Records the line of the directory being left and returns its digest.
+     */
+    CompletableFuture<byte[]> exit(Path directory) throws IOException {
+        Directory current = directories.pop();
+        index.writeLong(offset);
+        index.writeLong(current.start);
+        CompletableFuture<byte[]> digest = CompletableFuture.allOf(current.children.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> digest(current.children));
+        child(directory, digest);
+        return digest;
+    }
+
+    private byte[] digest(SortedMap<String, CompletableFuture<byte[]>> children) {
+        List<HashAlgorithm> algorithms = spec.algorithms();
+        HashAlgorithm.Digest[] digests = algorithms.stream().map(HashAlgorithm::newDigest).toArray(HashAlgorithm.Digest[]::new);
+        for (Map.Entry<String, CompletableFuture<byte[]>> child : children.entrySet()) {
+            byte[] name = child.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] hash = child.getValue().join();
+            ByteBuffer entry = ByteBuffer.allocate(name.length + 1 + hash.length).put(name).put((byte) 0).put(hash);
+            entry.flip();
+            for (HashAlgorithm.Digest digest : digests) {
+                digest.update(entry.rewind());
+            }
+        }
+        byte[] result = new byte[spec.length()];
+        for (int i = 0, position = 0; i < digests.length; position += algorithms.get(i++).length()) {
+            digests[i].finish(result, position);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+    }
+
+    private static class Directory {
+        private final long start;
+        private final SortedMap<String, CompletableFuture<byte[]>> children = new TreeMap<>();
+
+        Directory(long start) {
+            this.start = start;
+        }
+    }
+}
@@ -1,20 +1,32 @@
 package ru.ifmo.rain.vlasova.walk;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public class RecursiveWalk {
+    /**
+     * Options of the tree walk. There is no {@code --checkpoint}: the order of a tree walk is not
+     * stable between runs, so there is no line to resume from.
+     */
+    private static final Set<String> OPTIONS = Set.of("threads", "index", "hash", "links", "duplicates", "watch",
+            "merkle", "stats");
+
     private final Path inputPath, outputPath;
+    private final WalkOptions options;
+    private final ThreadLocal<FileHasher> hashers;
+    private final WalkStats stats;
 
     public static void main(String[] args) {
         try {
-            if (args != null && args.length == 2 && args[0] != null && args[1] != null) {
-                RecursiveWalk recursiveWalk = new RecursiveWalk(args[0], args[1]);
+            if (args != null && args.length >= 2 && args[0] != null && args[1] != null) {
+                RecursiveWalk recursiveWalk = new RecursiveWalk(args[0], args[1], WalkOptions.parse(args, 2, OPTIONS));
                 recursiveWalk.process();
             } else {
                 throw new WalkingException("Expected two arguments");
@@ -24,7 +36,10 @@ public class RecursiveWalk {
         }
     }
 
-    private RecursiveWalk(String inputFile, String outputFile) throws WalkingException {
+    private RecursiveWalk(String inputFile, String outputFile, WalkOptions options) throws WalkingException {
+        this.options = options;
+        stats = options.stats >= 0 ? new WalkStats(options.stats) : null;
+        hashers = ThreadLocal.withInitial(() -> options.hash.newHasher(stats));
         try {
             inputPath = Paths.get(inputFile);
         } catch (InvalidPathException e) {
@@ -45,16 +60,72 @@ public class RecursiveWalk {
     }
 
     private void process() throws WalkingException {
+        if (options.duplicates) {
+            new DuplicateFinder(options).find(inputPath, outputPath);
+        } else if (options.watch >= 0) {
+            try (TreeWatcher watcher = new TreeWatcher(options)) {
+                watchRoots(watcher);
+                walkWithIndex();
+                watcher.run(outputPath);
+            } catch (IOException e) {
+                throw new WalkingException("Can't watch files: " + e.getMessage());
+            }
+        } else {
+            walkWithIndex();
+        }
+    }
+
+    private void watchRoots(TreeWatcher watcher) throws WalkingException {
         try (BufferedReader bufferedReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
-            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+            String path;
+            while ((path = bufferedReader.readLine()) != null) {
+                try {
+                    watcher.addRoot(Paths.get(path));
+                } catch (InvalidPathException | IOException e) {
+                    System.err.println("Can't watch " + path + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new WalkingException("Can't create reader for file " + inputPath);
+        }
+    }
+
+    private void walkWithIndex() throws WalkingException {
+        HashIndex index = options.index == null ? null : new HashIndex(options.index, options.hash);
+        try {
+            walk(index);
+            if (index != null) {
+                index.commit();
+            }
+        } catch (IOException e) {
+            throw new WalkingException("Can't update index " + options.index + ": " + e.getMessage());
+        } finally {
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println("Can't remove temporary index: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void walk(HashIndex index) throws WalkingException {
+        if (stats != null) {
+            stats.start();
+        }
+        try (BufferedReader bufferedReader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+            try (ResultWriter writer = new ResultWriter(outputPath, options.hash, System.lineSeparator());
+                 HashPipeline pipeline = new HashPipeline(options.threads, writer::write);
+                 MerkleTree merkle = options.merkle ? new MerkleTree(outputPath, options.hash, System.lineSeparator()) : null) {
                 String path;
-                Visitor visitor = new Visitor(bufferedWriter);
+                Visitor visitor = new Visitor(pipeline, index, merkle);
                 while ((path = bufferedReader.readLine()) != null) {
                     try {
                         Path currentPath = Paths.get(path);
                         Files.walkFileTree(currentPath, visitor);
                     } catch (InvalidPathException e) {
-                        write(0, path, bufferedWriter);
+                        visitor.submit(path, CompletableFuture.completedFuture(options.hash.zero()));
                     }
                 }
             } catch (IOException e) {
@@ -62,47 +133,139 @@ public class RecursiveWalk {
             }
         } catch (IOException e) {
             throw new WalkingException("Can't create writer for file " + outputPath);
+        } finally {
+            if (stats != null) {
+                stats.close();
+            }
         }
     }
 
-
-    private FileVisitResult write(int hash, String file, BufferedWriter bufferedWriter) throws IOException {
-        bufferedWriter.write(String.format("%08x %s%n", hash, file));
-        return FileVisitResult.CONTINUE;
+    private byte[] getHash(Path file, String name, BasicFileAttributes attrs, HashIndex index) {
+        try {
+            FileHasher hasher = hashers.get();
+            return index == null ? hasher.hash(file) : index.hash(file, name, attrs, hasher);
+        } catch (IOException e) {
+            return options.hash.zero();
+        }
     }
 
-    private int getHash(InputStream inputStream) throws IOException {
-        int hash = 0x811c9dc5;
-        int currentBufferLength;
-        byte[] buffer = new byte[4096];
-        while ((currentBufferLength = inputStream.read(buffer)) != -1) {
-            for (int i = 0; i < currentBufferLength; ++i) {
-                hash = (hash * 0x01000193) ^ (buffer[i] & 0xff);
+    public class Visitor extends SimpleFileVisitor<Path> {
+        private final HashPipeline pipeline;
+        private final HashIndex index;
+        private final LinkCache links;
+        private final MerkleTree merkle;
+        private long left = System.nanoTime();
+
+        Visitor(HashPipeline pipeline, HashIndex index, MerkleTree merkle) {
+            this.pipeline = pipeline;
+            this.index = index;
+            this.merkle = merkle;
+            links = options.links > 0 ? new LinkCache(options.links, options.hash) : null;
+        }
+
+        private void submit(String name, CompletableFuture<byte[]> hash) throws IOException {
+            if (merkle != null) {
+                merkle.line(name);
             }
+            pipeline.submit(name, hash);
         }
-        return hash;
-    }
 
-    public class Visitor extends SimpleFileVisitor<Path> {
-        private BufferedWriter bufferedWriter;
+        private CompletableFuture<byte[]> submit(String name, Supplier<byte[]> task) throws IOException {
+            if (merkle != null) {
+                merkle.line(name);
+            }
+            return pipeline.submit(name, task);
+        }
 
-        Visitor(BufferedWriter writer) {
-            bufferedWriter = writer;
+        /**
+         * Records a hash reused from another link in the index, so that the path is not read again
+         * by a run without the link cache.
+         */
+        private byte[] record(String name, BasicFileAttributes attrs, byte[] hash) {
+            if (!Arrays.equals(hash, options.hash.zero())) {
+                try {
+                    index.record(name, attrs, hash);
+                } catch (IOException e) {
+                    System.err.println("Can't record " + name + " in index: " + e.getMessage());
+                }
+            }
+            return hash;
         }
 
+        /**
+         * Accounts the time the walker spent since the previous callback returned.
+         */
+        private void enter() {
+            if (stats != null) {
+                stats.traversal(System.nanoTime() - left);
+            }
+        }
+
+        private FileVisitResult leave() {
+            if (stats != null) {
+                left = System.nanoTime();
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            enter();
+            if (stats != null) {
+                stats.directory();
+            }
+            if (merkle != null) {
+                merkle.enter();
+            }
+            return leave();
+        }
+
+        @Override
         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            int hash;
-            try {
-                InputStream inputStream = Files.newInputStream(file);
-                hash = getHash(inputStream);
-            } catch (IOException e) {
-                hash = 0;
+            enter();
+            if (stats != null) {
+                stats.file();
+            }
+            String name = file.toString();
+            CompletableFuture<byte[]> hash = links == null ? null : links.get(attrs);
+            if (hash != null) {
+                if (index != null) {
+                    hash = hash.thenApply(bytes -> record(name, attrs, bytes));
+                }
+                submit(name, hash);
+            } else {
+                hash = submit(name, () -> getHash(file, name, attrs, index));
+                if (links != null) {
+                    links.put(attrs, hash);
+                }
+            }
+            if (merkle != null) {
+                merkle.child(file, hash);
             }
-            return write(hash, file.toString(), bufferedWriter);
+            return leave();
         }
 
+        @Override
         public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-            return write(0, file.toString(), bufferedWriter);
+            enter();
+            if (stats != null) {
+                stats.failure();
+            }
+            CompletableFuture<byte[]> hash = CompletableFuture.completedFuture(options.hash.zero());
+            submit(file.toString(), hash);
+            if (merkle != null) {
+                merkle.child(file, hash);
+            }
+            return leave();
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            enter();
+            if (merkle != null) {
+                submit(MerkleTree.directoryName(dir), merkle.exit(dir));
+            }
+            return leave();
         }
     }
 }
@@ -0,0 +1,154 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes result lines of the form {@code <hex hash columns> <path><line separator>} in UTF-8.
+ * Hashes and paths are encoded straight into one large buffer that is flushed through a
+ * {@link FileChannel}, so writing a line allocates nothing. Unpaired surrogates are written as {@code '?'}.
+ */
+class ResultWriter implements AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+    private final byte[] lineSeparator;
+    private final int[] columnEnds;
+    private final int hashChars;
+    private int count;
+
+    ResultWriter(Path file, HashSpec spec, String lineSeparator) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), spec, lineSeparator);
+    }
+
+    ResultWriter(FileChannel channel, HashSpec spec, String lineSeparator) {
+        this.channel = channel;
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.UTF_8);
+        columnEnds = new int[spec.algorithms().size()];
+        int end = 0;
+        for (int i = 0; i < columnEnds.length; i++) {
+            end += spec.algorithms().get(i).length();
+            columnEnds[i] = end;
+        }
+        hashChars = 2 * end + columnEnds.length;
+    }
+
+    void write(byte[] hash, String file) throws IOException {
+        if (count + hashChars > BUFFER_SIZE) {
+            flushBuffer();
+        }
+        int offset = 0;
+        for (int column = 0; column < columnEnds.length; column++) {
+            for (int end = columnEnds[column]; offset < end; offset++) {
+                buffer[count++] = HEX[(hash[offset] >> 4) & 0xf];
+                buffer[count++] = HEX[hash[offset] & 0xf];
+            }
+            buffer[count++] = ' ';
+        }
+        writePath(file);
+        newLine();
+    }
+
+    void newLine() throws IOException {
+        if (count + lineSeparator.length > BUFFER_SIZE) {
+            flushBuffer();
+        }
+        for (byte b : lineSeparator) {
+            buffer[count++] = b;
+        }
+    }
+
+    private void writePath(String file) throws IOException {
+        for (int i = 0, length = file.length(); i < length; i++) {
+            if (count > BUFFER_SIZE - 4) {
+                flushBuffer();
+            }
+            char c = file.charAt(i);
+            if (c < 0x80) {
+                buffer[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[count++] = (byte) (0xc0 | (c >> 6));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(file.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, file.charAt(++i));
+                    buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                } else {
+                    buffer[count++] = '?';
+                }
+            } else {
+                buffer[count++] = (byte) (0xe0 | (c >> 12));
+                buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes {@link #write} produces for the path.
+     */
+    static int length(String file) {
+        int length = 0;
+        for (int i = 0; i < file.length(); i++) {
+            char c = file.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < file.length() && Character.isLowSurrogate(file.charAt(i + 1))) {
+                    i++;
+                    length += 4;
+                } else {
+                    length++;
+                }
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void flushBuffer() throws IOException {
+        wrapper.clear().limit(count);
+        while (wrapper.hasRemaining()) {
+            channel.write(wrapper);
+        }
+        count = 0;
+    }
+
+    void flush() throws IOException {
+        flushBuffer();
+    }
+
+    /**
+     * Flushes and forces the written lines to the storage device.
+     *
+     * @return position of the channel after the last written line
+     */
+    long sync() throws IOException {
+        flushBuffer();
+        channel.force(false);
+        return channel.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the walked trees and appends a new line to the journal whenever a file is created or
+ * modified; the last line of a path supersedes the earlier ones. Events are coalesced per path
+ * and a file is re-hashed only after it has been quiet for the debounce interval. When events
+ * of a directory are lost, its entries are rescanned.
+ */
+class TreeWatcher implements AutoCloseable {
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Set<WatchKey> trees = new HashSet<>();
+    private final Set<Path> treeDirectories = new HashSet<>();
+    private final Set<Path> fileRoots = new HashSet<>();
+    private final Map<Path, Long> pending = new LinkedHashMap<>();
+    private final long debounce;
+    private final HashSpec spec;
+    private final FileHasher hasher;
+    private ResultWriter journal;
+
+    TreeWatcher(WalkOptions options) throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        debounce = TimeUnit.MILLISECONDS.toNanos(options.watch);
+        spec = options.hash;
+        hasher = spec.newHasher();
+    }
+
+    void addRoot(Path root) throws IOException {
+        if (Files.isDirectory(root)) {
+            registerTree(root);
+        } else if (root.toAbsolutePath().getParent() != null) {
+            fileRoots.add(root);
+            register(root.toAbsolutePath().getParent(), root.getParent() == null ? Paths.get("") : root.getParent());
+        }
+    }
+
+    private WatchKey register(Path directory, Path name) throws IOException {
+        WatchKey key = directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        directories.putIfAbsent(key, name);
+        return key;
+    }
+
+    private void registerTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = register(dir, dir);
+                directories.put(key, dir);
+                trees.add(key);
+                treeDirectories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Appends lines for changed files to the journal until the thread is interrupted.
+     * Roots should be added before the initial walk, so that no change after it is missed.
+     */
+    void run(Path journalPath) throws IOException {
+        try (ResultWriter writer = new ResultWriter(FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND), spec, System.lineSeparator())) {
+            journal = writer;
+            while (!Thread.currentThread().isInterrupted() && !directories.isEmpty()) {
+                WatchKey key = pending.isEmpty() ? watchService.take()
+                        : watchService.poll(Math.max(0, nextDeadline() - System.nanoTime()), TimeUnit.NANOSECONDS);
+                for (; key != null; key = watchService.poll()) {
+                    handle(key);
+                }
+                processDue();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        if (directory != null) {
+            boolean tree = trees.contains(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    rescan(directory, tree);
+                    continue;
+                }
+                Path child = directory.resolve((Path) event.context());
+                if (!tree && !fileRoots.contains(child)) {
+                    continue;
+                }
+                if (event.kind() == ENTRY_DELETE) {
+                    pending.remove(child);
+                } else {
+                    schedule(child);
+                }
+            }
+        }
+        if (!key.reset()) {
+            treeDirectories.remove(directories.remove(key));
+            trees.remove(key);
+        }
+    }
+
+    private void schedule(Path file) {
+        pending.remove(file);
+        pending.put(file, System.nanoTime() + debounce);
+    }
+
+    private long nextDeadline() {
+        return pending.values().iterator().next();
+    }
+
+    private void processDue() throws IOException {
+        long now = System.nanoTime();
+        List<Path> due = new ArrayList<>();
+        for (Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            if (entry.getValue() - now > 0) {
+                break;
+            }
+            due.add(entry.getKey());
+            iterator.remove();
+        }
+        boolean written = false;
+        for (Path file : due) {
+            written |= update(file);
+        }
+        if (written) {
+            journal.flush();
+        }
+    }
+
+    private boolean update(Path file) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+        if (attrs.isDirectory()) {
+            if (!treeDirectories.contains(file)) {
+                registerTree(file);
+                rescanTree(file);
+            }
+            return false;
+        }
+        byte[] hash;
+        try {
+            hash = hasher.hash(file);
+        } catch (IOException e) {
+            hash = spec.zero();
+        }
+        journal.write(hash, file.toString());
+        return true;
+    }
+
+    private void rescan(Path directory, boolean tree) {
+        if (!tree) {
+            for (Path root : fileRoots) {
+                if (directory.equals(root.getParent() == null ? Paths.get("") : root.getParent())) {
+                    schedule(root);
+                }
+            }
+            return;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (!treeDirectories.contains(entry)) {
+                    schedule(entry);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            System.err.println("Can't rescan " + directory + ": " + e.getMessage());
+        }
+    }
+
+    private void rescanTree(Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                schedule(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -1,30 +1,37 @@
 package ru.ifmo.rain.vlasova.walk;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public class Walk {
+    private static final int ASYNC_WINDOW = 1 << 12;
+    private static final Set<String> OPTIONS = Set.of("index", "hash", "checkpoint", "checkpoint-interval", "resume",
+            "locality", "async");
+
     private final Path inputPath, outputPath;
+    private final WalkOptions options;
+    private final FileHasher hasher;
 
-    private int getHash(InputStream inputStream) throws IOException {
-        int hash = 0x811c9dc5;
-        int currentBufferLength;
-        byte[] buffer = new byte[4096];
-        while ((currentBufferLength = inputStream.read(buffer)) != -1) {
-            for (int i = 0; i < currentBufferLength; ++i) {
-                hash = (hash * 0x01000193) ^ (buffer[i] & 0xff);
-            }
-        }
-        return hash;
+    public Walk(String inputFile, String outputFile) throws WalkingException {
+        this(inputFile, outputFile, new WalkOptions());
     }
 
-    public Walk(String inputFile, String outputFile) throws WalkingException {
+    Walk(String inputFile, String outputFile, WalkOptions options) throws WalkingException {
+        this.options = options;
+        hasher = options.hash.newHasher();
         try {
             inputPath = Paths.get(inputFile);
             outputPath = Paths.get(outputFile);
@@ -41,28 +48,149 @@ public class Walk {
     }
 
     private void process() throws WalkingException {
+        HashIndex index = options.index == null ? null : new HashIndex(options.index, options.hash);
+        try {
+            walk(index);
+            if (index != null) {
+                index.commit();
+            }
+        } catch (IOException e) {
+            throw new WalkingException(e.getMessage());
+        } finally {
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void walk(HashIndex index) throws WalkingException {
+        Checkpoint checkpoint = options.checkpoint == null ? null : new Checkpoint(options.checkpoint, options.checkpointInterval);
         try (BufferedReader bufferedReader = Files.newBufferedReader(inputPath);
-             BufferedWriter bufferedWriter = Files.newBufferedWriter(outputPath)) {
-            String path;
-            int hash;
-            while ((path = bufferedReader.readLine()) != null) {
-                try (InputStream inputStream = Files.newInputStream(Paths.get(path))) {
-                    hash = getHash(inputStream);
-                } catch (Exception e) {
-                    hash = 0;
+             ResultWriter writer = new ResultWriter(openOutput(checkpoint), options.hash, "\n");
+             AsyncHasher async = options.async > 0 ? new AsyncHasher(options.hash, options.async) : null;
+             HashPipeline pipeline = new HashPipeline(writer::write, async == null ? 0 : ASYNC_WINDOW)) {
+            long lines = 0;
+            if (checkpoint != null) {
+                while (lines < checkpoint.lines() && bufferedReader.readLine() != null) {
+                    lines++;
+                }
+            }
+            String[] paths = new String[Math.max(1, options.locality)];
+            byte[][] hashes = async == null ? new byte[paths.length][] : null;
+            List<CompletableFuture<byte[]>> futures = async == null ? null : new ArrayList<>(Collections.nCopies(paths.length, null));
+            LocalityOrder locality = options.locality > 0 ? new LocalityOrder(paths.length) : null;
+            int size;
+            while ((size = readBatch(bufferedReader, paths)) > 0) {
+                Integer[] order = locality == null ? null : locality.sort(paths, size);
+                for (int i = 0; i < size; i++) {
+                    int next = order == null ? i : order[i];
+                    if (async == null) {
+                        hashes[next] = getHash(paths[next], index);
+                    } else {
+                        futures.set(next, getHash(paths[next], index, async));
+                    }
+                }
+                for (int i = 0; i < size; i++) {
+                    if (async == null) {
+                        pipeline.submit(paths[i], hashes[i]);
+                    } else {
+                        pipeline.submit(paths[i], futures.get(i));
+                    }
+                }
+                lines += size;
+                if (checkpoint != null && checkpoint.isDue()) {
+                    pipeline.flush();
+                    checkpoint.save(lines, writer.sync());
                 }
-                bufferedWriter.write(String.format("%08x", hash) + " " + path + "\n");
             }
         } catch (IOException e) {
             throw new WalkingException(e.getMessage());
         }
+        if (checkpoint != null) {
+            try {
+                checkpoint.delete();
+            } catch (IOException e) {
+                System.err.println("Can't delete checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Opens the output. When resuming, lines written after the checkpoint are dropped and
+     * writing continues from its end.
+     */
+    private FileChannel openOutput(Checkpoint checkpoint) throws IOException {
+        if (checkpoint == null || !options.resume) {
+            return FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        checkpoint.load();
+        FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < checkpoint.length()) {
+                throw new IOException("Output is shorter than the checkpoint");
+            }
+            channel.truncate(checkpoint.length()).position(checkpoint.length());
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
     }
 
+    private static int readBatch(BufferedReader reader, String[] paths) throws IOException {
+        int size = 0;
+        while (size < paths.length && (paths[size] = reader.readLine()) != null) {
+            size++;
+        }
+        return size;
+    }
+
+    private byte[] getHash(String path, HashIndex index) {
+        try {
+            return getHash(Paths.get(path), path, index);
+        } catch (Exception e) {
+            return options.hash.zero();
+        }
+    }
+
+    private CompletableFuture<byte[]> getHash(String path, HashIndex index, AsyncHasher async) {
+        try {
+            Path file = Paths.get(path);
+            if (index == null) {
+                return async.hash(file).exceptionally(e -> options.hash.zero());
+            }
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            byte[] stored = index.lookup(path, attrs);
+            CompletableFuture<byte[]> hash = stored == null ? async.hash(file) : CompletableFuture.completedFuture(stored);
+            return hash.thenApply(result -> {
+                try {
+                    index.record(path, attrs, result);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result;
+            }).exceptionally(e -> options.hash.zero());
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(options.hash.zero());
+        }
+    }
+
+    private byte[] getHash(Path file, String name, HashIndex index) throws IOException {
+        if (index == null) {
+            return hasher.hash(file);
+        }
+        return index.hash(file, name, Files.readAttributes(file, BasicFileAttributes.class), hasher);
+    }
 
     public static void main(String[] args) {
         try {
-            if (args != null && args.length == 2 && args[0] != null && args[1] != null) {
-                Walk walk = new Walk(args[0], args[1]);
+            if (args != null && args.length >= 2 && args[0] != null && args[1] != null) {
+                Walk walk = new Walk(args[0], args[1], WalkOptions.parse(args, 2, OPTIONS));
                 walk.process();
             } else {
                 throw new WalkingException("Expected two arguments");
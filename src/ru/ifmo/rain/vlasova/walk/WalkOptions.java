@@ -0,0 +1,112 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.util.Set;
+
+/**
+ * Optional {@code --name=value} arguments following the input and output files. Each tool passes
+ * the names it supports, and any other option is rejected rather than ignored.
+ */
+class WalkOptions {
+    int threads = 1;
+    String index;
+    HashSpec hash = HashSpec.DEFAULT;
+    int links;
+    boolean duplicates;
+    int watch = -1;
+    boolean merkle;
+    String checkpoint;
+    int checkpointInterval = 10;
+    boolean resume;
+    int locality;
+    int async;
+    int stats = -1;
+
+    static WalkOptions parse(String[] args, int from, Set<String> supported) throws WalkingException {
+        WalkOptions options = new WalkOptions();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (arg == null || !arg.startsWith("--")) {
+                throw new WalkingException("Unexpected argument " + arg);
+            }
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+            if (!supported.contains(name)) {
+                throw new WalkingException("Unsupported option --" + name);
+            }
+            options.set(name, value);
+        }
+        if (options.resume && options.checkpoint == null) {
+            throw new WalkingException("Option --resume requires --checkpoint");
+        }
+        return options;
+    }
+
+    private void set(String name, String value) throws WalkingException {
+        switch (name) {
+            case "threads":
+                threads = parseInt(name, value);
+                if (threads == 0) {
+                    threads = Runtime.getRuntime().availableProcessors();
+                }
+                break;
+            case "index":
+                index = require(name, value);
+                break;
+            case "hash":
+                hash = HashSpec.parse(require(name, value));
+                break;
+            case "links":
+                links = value == null ? 1 << 20 : parseInt(name, value);
+                break;
+            case "duplicates":
+                duplicates = true;
+                break;
+            case "watch":
+                watch = value == null ? 500 : parseInt(name, value);
+                break;
+            case "merkle":
+                merkle = true;
+                break;
+            case "checkpoint":
+                checkpoint = require(name, value);
+                break;
+            case "checkpoint-interval":
+                checkpointInterval = parseInt(name, value);
+                break;
+            case "resume":
+                resume = true;
+                break;
+            case "locality":
+                locality = value == null ? 4096 : parseInt(name, value);
+                break;
+            case "async":
+                async = value == null ? 64 << 20 : parseInt(name, value);
+                break;
+            case "stats":
+                stats = value == null ? 5 : parseInt(name, value);
+                break;
+            default:
+                throw new WalkingException("Unknown option --" + name);
+        }
+    }
+
+    private static int parseInt(String name, String value) throws WalkingException {
+        try {
+            int result = Integer.parseInt(require(name, value));
+            if (result < 0) {
+                throw new WalkingException("Option --" + name + " must not be negative");
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new WalkingException("Option --" + name + " expects a number");
+        }
+    }
+
+    private static String require(String name, String value) throws WalkingException {
+        if (value == null || value.isEmpty()) {
+            throw new WalkingException("Option --" + name + " expects a value");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,216 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput counters of a walk. Counters are {@link LongAdder}s and the per-file hashing latency
+ * goes to a histogram of power-of-two buckets, so that hashing threads don't contend on updates.
+ * While started, the counters are published as the {@link WalkStatsMBean} and a progress line is
+ * printed to stderr periodically and once more when the walk ends.
+ * <p>
+ * Read time covers reads into the buffer; for memory-mapped files the page faults are counted
+ * as hash time.
+ */
+class WalkStats implements WalkStatsMBean, AutoCloseable {
+    private static final String NAME = "ru.ifmo.rain.vlasova.walk:type=WalkStats";
+    private static final int BUCKETS = Long.SIZE;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder traversal = new LongAdder();
+    private final LongAdder open = new LongAdder();
+    private final LongAdder read = new LongAdder();
+    private final LongAdder hash = new LongAdder();
+    private final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+    private final int interval;
+    private long start;
+    private ScheduledExecutorService reporter;
+    private ObjectName name;
+
+    WalkStats(int intervalSeconds) {
+        interval = intervalSeconds;
+    }
+
+    void start() {
+        start = System.nanoTime();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(NAME);
+            server.registerMBean(this, objectName);
+            name = objectName;
+        } catch (JMException e) {
+            System.err.println("Can't register " + NAME + ": " + e.getMessage());
+        }
+        if (interval > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "walk-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> System.err.println(progress()), interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    void file() {
+        files.increment();
+    }
+
+    void directory() {
+        directories.increment();
+    }
+
+    void failure() {
+        failures.increment();
+    }
+
+    void traversal(long nanos) {
+        traversal.add(nanos);
+    }
+
+    void open(long nanos) {
+        open.add(nanos);
+    }
+
+    void read(long nanos, long count) {
+        read.add(nanos);
+        bytes.add(count);
+    }
+
+    void hash(long nanos) {
+        hash.add(nanos);
+    }
+
+    void hashed(long bytes) {
+        this.bytes.add(bytes);
+    }
+
+    void latency(long nanos) {
+        latencies.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+    }
+
+    String progress() {
+        return String.format("files: %d (%.0f/s), bytes: %d (%.1f MB/s), directories: %d, failed: %d, "
+                        + "traversal/open/read/hash: %d/%d/%d/%d ms, latency p50/p99: %.0f/%.0f us",
+                getFiles(), getFilesPerSecond(), getBytes(), getBytesPerSecond() / (1 << 20), getDirectories(),
+                getFailedVisits(), getTraversalMillis(), getOpenMillis(), getReadMillis(), getHashMillis(),
+                getMedianLatencyMicros(), getP99LatencyMicros());
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    @Override
+    public long getFailedVisits() {
+        return failures.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        return perSecond(getFiles());
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    private double perSecond(long count) {
+        long elapsed = System.nanoTime() - start;
+        return elapsed <= 0 ? 0 : count * 1e9 / elapsed;
+    }
+
+    @Override
+    public long getTraversalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(traversal.sum());
+    }
+
+    @Override
+    public long getOpenMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(open.sum());
+    }
+
+    @Override
+    public long getReadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(read.sum());
+    }
+
+    @Override
+    public long getHashMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hash.sum());
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public double getMedianLatencyMicros() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getP99LatencyMicros() {
+        return percentile(0.99);
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing the percentile.
+     */
+    private double percentile(double fraction) {
+        long[] histogram = getLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen > 0 && seen >= fraction * total) {
+                return Math.scalb(1.0, i + 1) / 1e3;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        System.err.println(progress());
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Can't unregister " + NAME + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ru.ifmo.rain.vlasova.walk;
+
+/**
+ * Management interface of the counters of a running walk.
+ */
+public interface WalkStatsMBean {
+    long getFiles();
+
+    long getBytes();
+
+    long getDirectories();
+
+    long getFailedVisits();
+
+    double getFilesPerSecond();
+
+    double getBytesPerSecond();
+
+    long getTraversalMillis();
+
+    long getOpenMillis();
+
+    long getReadMillis();
+
+    long getHashMillis();
+
+    /**
+     * Returns the numbers of files whose hashing took from {@code 2^i} to {@code 2^(i + 1)} nanoseconds.
+     */
+    long[] getLatencyHistogram();
+
+    double getMedianLatencyMicros();
+
+    double getP99LatencyMicros();
+}
@@ -0,0 +1,137 @@
+package ru.ifmo.rain.vlasova.walk;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming xxHash64 with zero seed. The digest is stored big-endian, as printed by {@code xxhsum}.
+ */
+class XxHash64 implements HashAlgorithm {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+    private static final int STRIPE = 32;
+
+    @Override
+    public String name() {
+        return "xxhash64";
+    }
+
+    @Override
+    public int length() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public Digest newDigest() {
+        return new XxDigest();
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long acc, long value) {
+        return (acc ^ round(0, value)) * PRIME1 + PRIME4;
+    }
+
+    private static class XxDigest implements Digest {
+        private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+        private long v1, v2, v3, v4, total;
+
+        XxDigest() {
+            reset();
+        }
+
+        private void reset() {
+            v1 = PRIME1 + PRIME2;
+            v2 = PRIME2;
+            v3 = 0;
+            v4 = -PRIME1;
+            total = 0;
+            stripe.clear();
+        }
+
+        @Override
+        public void update(ByteBuffer data) {
+            total += data.remaining();
+            if (stripe.position() > 0) {
+                while (stripe.hasRemaining() && data.hasRemaining()) {
+                    stripe.put(data.get());
+                }
+                if (stripe.hasRemaining()) {
+                    return;
+                }
+                consume(stripe, 0);
+                stripe.clear();
+            }
+            int position = data.position();
+            boolean little = data.order() == ByteOrder.LITTLE_ENDIAN;
+            for (int limit = data.limit() - STRIPE; position <= limit; position += STRIPE) {
+                v1 = round(v1, readLong(data, position, little));
+                v2 = round(v2, readLong(data, position + 8, little));
+                v3 = round(v3, readLong(data, position + 16, little));
+                v4 = round(v4, readLong(data, position + 24, little));
+            }
+            data.position(position);
+            stripe.put(data);
+        }
+
+        private void consume(ByteBuffer data, int position) {
+            v1 = round(v1, data.getLong(position));
+            v2 = round(v2, data.getLong(position + 8));
+            v3 = round(v3, data.getLong(position + 16));
+            v4 = round(v4, data.getLong(position + 24));
+        }
+
+        private static long readLong(ByteBuffer data, int position, boolean little) {
+            long value = data.getLong(position);
+            return little ? value : Long.reverseBytes(value);
+        }
+
+        @Override
+        public void finish(byte[] out, int offset) {
+            long hash;
+            if (total >= STRIPE) {
+                hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+                hash = merge(hash, v1);
+                hash = merge(hash, v2);
+                hash = merge(hash, v3);
+                hash = merge(hash, v4);
+            } else {
+                hash = PRIME5;
+            }
+            hash += total;
+
+            int position = 0;
+            int limit = stripe.position();
+            for (; position + Long.BYTES <= limit; position += Long.BYTES) {
+                hash ^= round(0, stripe.getLong(position));
+                hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            }
+            if (position + Integer.BYTES <= limit) {
+                hash ^= (stripe.getInt(position) & 0xffffffffL) * PRIME1;
+                hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+                position += Integer.BYTES;
+            }
+            for (; position < limit; position++) {
+                hash ^= (stripe.get(position) & 0xff) * PRIME5;
+                hash = Long.rotateLeft(hash, 11) * PRIME1;
+            }
+
+            hash ^= hash >>> 33;
+            hash *= PRIME2;
+            hash ^= hash >>> 29;
+            hash *= PRIME3;
+            hash ^= hash >>> 32;
+
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                out[offset + i] = (byte) hash;
+                hash >>>= 8;
+            }
+            reset();
+        }
+    }
+}